@@ -0,0 +1,116 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toCollection;
+
+/**
+ * Loading and ranking of the catalog: the bot used to parse the whole export and group it into sorted sets on every
+ * send, it now memory-maps the compiled ranked catalog and decodes only the pages it picks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogBenchmark {
+    private static final MethodHandle FROM_STRING = DefaultPackage.WIKI_PAGE_FROM_STRING.asType(methodType(Object.class, String.class));
+    private static final MethodHandle CATEGORY = DefaultPackage.WIKI_PAGE_CATEGORY.asType(methodType(String.class, Object.class));
+    private static final MethodHandle RANKED_CATALOG_OF = DefaultPackage.RANKED_CATALOG_OF.asType(methodType(Object.class, List.class));
+    private static final MethodHandle RANKED_CATALOG_OPEN = DefaultPackage.RANKED_CATALOG_OPEN.asType(methodType(Object.class, Path.class));
+    private static final MethodHandle RANKED_CATALOG_GET = DefaultPackage.RANKED_CATALOG_GET.asType(methodType(Object.class, Object.class, String.class, int.class));
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private Path compiledPath;
+    private List<String> lines;
+    private List<Object> pages;
+    private Set<String> categories;
+
+    @Setup
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("phraseaday-catalog");
+        lines = DataGenerator.pages(rows);
+        pages = parse(lines);
+        categories = new LinkedHashSet<>();
+        for (Object page : pages) {
+            categories.add((String) CATEGORY.invokeExact(page));
+        }
+        compiledPath = directory.resolve("wiki.pages.bin");
+        DefaultPackage.RANKED_CATALOG_WRITE.invoke(compiledPath, pages);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        DataGenerator.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<Object> parseExport() throws Throwable {
+        return parse(lines);
+    }
+
+    /** How the bot ranked the catalog before the compiled catalog */
+    @Benchmark
+    public Map<String, TreeSet<Object>> groupIntoSortedSets() {
+        return pages.stream().collect(groupingBy(CatalogBenchmark::category, toCollection(TreeSet::new)));
+    }
+
+    @Benchmark
+    public Object compileRankedCatalog() throws Throwable {
+        return (Object) RANKED_CATALOG_OF.invokeExact((List) pages);
+    }
+
+    /** What the bot does on a send: map the compiled catalog and decode the top page of every category */
+    @Benchmark
+    public void openRankedCatalogAndPickTopPages(Blackhole blackhole) throws Throwable {
+        Object catalog = (Object) RANKED_CATALOG_OPEN.invokeExact(compiledPath);
+        for (String category : categories) {
+            blackhole.consume((Object) RANKED_CATALOG_GET.invokeExact(catalog, category, 0));
+        }
+    }
+
+    private static List<Object> parse(List<String> lines) throws Throwable {
+        List<Object> pages = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            pages.add((Object) FROM_STRING.invokeExact(line));
+        }
+        return pages;
+    }
+
+    private static String category(Object page) {
+        try {
+            return (String) CATEGORY.invokeExact(page);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Scales the exported catalog and the sent messages of the project up to the sizes to benchmark, e.g., 10^6 rows.
+ *
+ * Rows of the seed files are repeated with a copy number appended to their ids and with random views, so the scaled
+ * catalog keeps the categories, the string lengths and the duplicates of the real one. The generator is seeded, so
+ * every run benchmarks the same data.
+ *
+ * Usage: java -cp target/benchmarks.jar org.panshemi.phraseaday.benchmarks.DataGenerator &lt;rows&gt; [output-dir]
+ */
+public final class DataGenerator {
+    /** Seed files of the project, relative to the benchmarks module */
+    static final Path SEED_PAGES = Paths.get(System.getProperty("SEED_PAGES", "../wiki.pages.csv"));
+    static final Path SEED_MESSAGES = Paths.get(System.getProperty("SEED_MESSAGES", "../bot.msg"));
+
+    private static final long SEED = 20160911L;
+
+    private DataGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path directory = Paths.get(args.length > 1 ? args[1] : "target/data");
+        Files.createDirectories(directory);
+        writeLines(directory.resolve("wiki.pages.csv"), pages(rows));
+        writeLines(directory.resolve("bot.msg"), messages(rows));
+    }
+
+    /**
+     * @return lines "project|category|url|id|title|views[|updated]" of the seed catalog repeated up to the rows
+     */
+    static List<String> pages(int rows) throws IOException {
+        List<String> seed = Files.readAllLines(SEED_PAGES, UTF_8);
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            String[] tokens = seed.get(row % seed.size()).split("\\|");
+            String copy = copySuffix(row / seed.size());
+            StringBuilder line = new StringBuilder().
+                    append(tokens[0]).append('|').
+                    append(tokens[1]).append('|').
+                    append(tokens[2]).append(copy).append('|').
+                    append(tokens[3]).append(copy).append('|').
+                    append(tokens[4]).append('|').
+                    // skewed like page views: few pages with many views, many with few
+                    append((int) Math.exp(random.nextDouble() * 14));
+            if (tokens.length > 6) {
+                line.append('|').append(tokens[6]);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * @return lines "timestamp|page-id|url" of the legacy sent messages repeated up to the rows
+     */
+    static List<String> messages(int rows) throws IOException {
+        List<String> seed = Files.readAllLines(SEED_MESSAGES, UTF_8);
+        List<String> lines = new ArrayList<>(rows);
+        LocalDateTime timestamp = LocalDateTime.of(2016, 9, 11, 9, 0);
+        for (int row = 0; row < rows; row++) {
+            String[] tokens = seed.get(row % seed.size()).split("\\|");
+            String copy = copySuffix(row / seed.size());
+            lines.add(timestamp.plusMinutes(row) + "|" + tokens[1] + copy + "|" + (tokens.length > 2 ? tokens[2] + copy : ""));
+        }
+        return lines;
+    }
+
+    /**
+     * @return response of the pageviews REST API with the daily views of a page over the days
+     */
+    static String pageViewsResponse(int days) {
+        Random random = new Random(SEED);
+        DateTimeFormatter format = DateTimeFormatter.BASIC_ISO_DATE;
+        LocalDate day = LocalDate.of(2015, 9, 4);
+        StringBuilder response = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                response.append(',');
+            }
+            response.append("{\"project\":\"en.wikipedia\",\"article\":\"Leo_Tolstoy\",\"granularity\":\"daily\",\"timestamp\":\"").
+                    append(day.plusDays(i).format(format)).
+                    append("00\",\"access\":\"all-access\",\"agent\":\"user\",\"views\":").
+                    append(random.nextInt(20_000)).
+                    append('}');
+        }
+        return response.append("]}").toString();
+    }
+
+    static void writeLines(Path path, List<String> lines) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String copySuffix(int copy) {
+        return copy == 0 ? "" : "_" + copy;
+    }
+}
@@ -0,0 +1,106 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Method handles to the classes of the project. They live in the default package, which cannot be imported from the
+ * named package that JMH requires for benchmarks. The handles are constants, so the JIT inlines them like direct calls.
+ */
+final class DefaultPackage {
+    static final Class<?> WIKI_PAGE = load("WikiCatalogExport$WikiPage");
+    static final Class<?> RANKED_CATALOG = load("RankedCatalog");
+    static final Class<?> SENT_HISTORY = load("SentHistory");
+    static final Class<?> SELECTION_ENGINE = load("SelectionEngine");
+    static final Class<?> TELEGRAM_USER = load("TelegramWikiBot$TelegramUser");
+    static final Class<?> PAGE_VIEWS = load("WikiCatalogExport$WikiPageStats$PageViews");
+
+    /** (String) WikiPage */
+    static final MethodHandle WIKI_PAGE_FROM_STRING = findStatic(WIKI_PAGE, "fromString", WIKI_PAGE, String.class);
+    /** (WikiPage) String */
+    static final MethodHandle WIKI_PAGE_TO_STRING = findVirtual(WIKI_PAGE, "toString", String.class);
+    /** (WikiPage) String */
+    static final MethodHandle WIKI_PAGE_CATEGORY = findVirtual(WIKI_PAGE, "getCategory", String.class);
+    /** (List) RankedCatalog */
+    static final MethodHandle RANKED_CATALOG_OF = findStatic(RANKED_CATALOG, "of", RANKED_CATALOG, List.class);
+    /** (Path, List) void */
+    static final MethodHandle RANKED_CATALOG_WRITE = findStatic(RANKED_CATALOG, "write", void.class, Path.class, List.class);
+    /** (Path) RankedCatalog */
+    static final MethodHandle RANKED_CATALOG_OPEN = findStatic(RANKED_CATALOG, "open", RANKED_CATALOG, Path.class);
+    /** (RankedCatalog, String, int) WikiPage */
+    static final MethodHandle RANKED_CATALOG_GET = findVirtual(RANKED_CATALOG, "get", WIKI_PAGE, String.class, int.class);
+    /** (Path, Path) SentHistory */
+    static final MethodHandle SENT_HISTORY_OPEN = findStatic(SENT_HISTORY, "open", SENT_HISTORY, Path.class, Path.class);
+    /** (SentHistory, String, String, String) boolean */
+    static final MethodHandle SENT_HISTORY_IS_SENT = findVirtual(SENT_HISTORY, "isSent", boolean.class, String.class, String.class, String.class);
+    /** (SentHistory) void */
+    static final MethodHandle SENT_HISTORY_CLOSE = findVirtual(SENT_HISTORY, "close", void.class);
+    /** (RankedCatalog, SentHistory, Map) SelectionEngine */
+    static final MethodHandle SELECTION_ENGINE_NEW = findConstructor(SELECTION_ENGINE, RANKED_CATALOG, SENT_HISTORY, Map.class);
+    /** (SelectionEngine, LocalDate, Collection) Map */
+    static final MethodHandle SELECTION_ENGINE_SELECT = findVirtual(SELECTION_ENGINE, "select", Map.class, LocalDate.class, Collection.class);
+    /** (String) TelegramUser */
+    static final MethodHandle TELEGRAM_USER_FROM_STRING = findStatic(TELEGRAM_USER, "fromString", TELEGRAM_USER, String.class);
+    /** (String) PageViews, the class is package-private */
+    static final MethodHandle PAGE_VIEWS_PARSE = unreflect(PAGE_VIEWS, "parse", String.class);
+
+    private DefaultPackage() {
+    }
+
+    /**
+     * @return (String[]) void, the main method of the class; the class is loaded, and reads its configuration, now
+     */
+    static MethodHandle main(String className) {
+        return findStatic(load(className), "main", void.class, String[].class);
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The project is not on the class path: " + name, e);
+        }
+    }
+
+    private static MethodHandle findStatic(Class<?> type, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findStatic(type, name, methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + type.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> type, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(type, name, methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + type.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> type, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findConstructor(type, methodType(void.class, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No constructor of " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle unreflect(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + type.getName() + "." + name, e);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Stand-in for the wiki projects, the Wikimedia REST API and the Telegram Bot API, so that the exporter and the bot
+ * can be run against it without network access, e.g., by the {@link LoadTest}.
+ *
+ * The first segment of a path is the host it stands in for, so the projects are reached with
+ * -DWIKI_BASEURL=http://localhost:&lt;port&gt;/{project} and -DWIKIMEDIA_BASEURL=http://localhost:&lt;port&gt;/wikimedia.org;
+ * Telegram is reached with -DTELEGRAM_BASEURL=http://localhost:&lt;port&gt;/bot. It serves:
+ *   * /&lt;project&gt;/wiki/&lt;list&gt;: a list page with FAKE_PAGES_PER_LIST links, or the file of the same path in
+ *     FAKE_RECORDINGS_DIR, e.g., a list page recorded with curl
+ *   * /&lt;project&gt;/w/api.php: canonical titles (1% of them missing) and language links (90% of the titles have one)
+ *   * /wikimedia.org/api/rest_v1/metrics/pageviews/per-article/...: daily views (0.5% of the pages are not found)
+ *   * /bot&lt;token&gt;/sendMessage and /bot&lt;token&gt;/getUpdates
+ * The content is derived from hashes of the titles, so every run serves the same catalog.
+ *
+ * Faults are injected with VM properties:
+ *   * FAKE_LATENCY_MS: latency of every response, 0 by default
+ *   * FAKE_LATENCY_JITTER_MS: random latency on top of it, 0 by default
+ *   * FAKE_ERROR_RATE: fraction of requests that fail with 500, 0 by default
+ *   * FAKE_THROTTLE_RATE: fraction of requests that are throttled with 429, 0 by default
+ *   * FAKE_MAX_REQUESTS_PER_SECOND: requests above it within a second are throttled with 429, unlimited by default
+ *
+ * Usage: java -cp target/benchmarks.jar org.panshemi.phraseaday.benchmarks.FakeApiServer [port]
+ */
+public final class FakeApiServer implements AutoCloseable {
+    private static final DateTimeFormatter PAGEVIEWS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final int pagesPerList = Integer.getInteger("FAKE_PAGES_PER_LIST", 10_000);
+    private final String recordingsDir = System.getProperty("FAKE_RECORDINGS_DIR");
+    private final long latencyMillis = Long.getLong("FAKE_LATENCY_MS", 0);
+    private final long jitterMillis = Long.getLong("FAKE_LATENCY_JITTER_MS", 0);
+    private final double errorRate = Double.parseDouble(System.getProperty("FAKE_ERROR_RATE", "0"));
+    private final double throttleRate = Double.parseDouble(System.getProperty("FAKE_THROTTLE_RATE", "0"));
+    private final int maxRequestsPerSecond = Integer.getInteger("FAKE_MAX_REQUESTS_PER_SECOND", 0);
+
+    private final Map<String, byte[]> listPages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicInteger requestsInSecond = new AtomicInteger();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    public FakeApiServer(int port) throws IOException {
+        // headers and body are separate writes, with Nagle's algorithm every response would wait for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        AtomicInteger counter = new AtomicInteger();
+        // latency is injected by sleeping, so every request in flight needs its own thread
+        handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-api-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        FakeApiServer server = new FakeApiServer(args.length > 0 ? Integer.parseInt(args[0]) : 8089);
+        server.start();
+        System.out.println("Serving on " + server.baseUrl());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return number of requests per route, e.g., "pageviews" or "sendMessage"
+     */
+    public Map<String, Long> requests() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            if ("POST".equals(exchange.getRequestMethod())) {
+                parameters.putAll(parameters(new String(readAll(exchange.getRequestBody()), UTF_8)));
+            }
+            int hostEnd = path.indexOf('/', 1);
+            String host = hostEnd < 0 ? path.substring(1) : path.substring(1, hostEnd);
+            String rest = hostEnd < 0 ? "" : path.substring(hostEnd);
+            boolean telegram = host.startsWith("bot");
+            String route = telegram ? rest.substring(1) : rest.startsWith("/wiki/") ? "wiki" :
+                    rest.startsWith("/w/api.php") ? (parameters.containsKey("prop") ? "langlinks" : "canonise") :
+                    rest.startsWith("/api/rest_v1/metrics/pageviews/") ? "pageviews" : "unknown";
+            requests.computeIfAbsent(route, r -> new LongAdder()).increment();
+
+            delay();
+            if (isThrottled()) {
+                throttled.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, telegram ?
+                        "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}" :
+                        "{\"type\":\"https://mediawiki.org/wiki/HyperSwitch/errors/request_rate_exceeded\"}");
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failed.increment();
+                respond(exchange, 500, "Internal Server Error");
+                return;
+            }
+            switch (route) {
+                case "wiki":
+                    respond(exchange, 200, listPage(host, path, rest.substring("/wiki/".length())));
+                    break;
+                case "canonise":
+                    respond(exchange, 200, canonicalTitles(parameters.get("titles")));
+                    break;
+                case "langlinks":
+                    respond(exchange, 200, langLinks(parameters.get("titles"), parameters.get("lllang")));
+                    break;
+                case "pageviews":
+                    pageViews(exchange, rest);
+                    break;
+                case "sendMessage":
+                    respond(exchange, 200, "{\"ok\":true,\"result\":{\"message_id\":" + messageIds.incrementAndGet() +
+                            ",\"chat\":{\"id\":" + parameters.get("chat_id") + "},\"text\":" + quote(parameters.getOrDefault("text", "")) + "}}");
+                    break;
+                case "getUpdates":
+                    // long polling without updates
+                    TimeUnit.SECONDS.sleep(Math.min(1, Long.parseLong(parameters.getOrDefault("timeout", "0"))));
+                    respond(exchange, 200, "{\"ok\":true,\"result\":[]}");
+                    break;
+                default:
+                    respond(exchange, 404, "Not Found");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            respond(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    private boolean isThrottled() {
+        if (maxRequestsPerSecond > 0) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long previous = currentSecond.get();
+            if (second != previous && currentSecond.compareAndSet(previous, second)) {
+                requestsInSecond.set(0);
+            }
+            if (requestsInSecond.incrementAndGet() > maxRequestsPerSecond) {
+                return true;
+            }
+        }
+        return throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate;
+    }
+
+    private byte[] listPage(String project, String path, String list) {
+        if (recordingsDir != null) {
+            Path recording = Paths.get(recordingsDir, path);
+            if (Files.isRegularFile(recording)) {
+                try {
+                    return Files.readAllBytes(recording);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read recording " + recording, e);
+                }
+            }
+        }
+        return listPages.computeIfAbsent(project + '/' + list, key -> syntheticListPage(list));
+    }
+
+    /**
+     * Links in the structure of the list they stand in for, so that the CSS selectors of the exporter find them.
+     */
+    private byte[] syntheticListPage(String list) {
+        String prefix, suffix;
+        if (list.contains("English")) {
+            prefix = "<div><ul><li>";
+            suffix = "</li></ul></div>";
+        } else if (list.contains("German")) {
+            prefix = "<dl><dd>";
+            suffix = "</dd></dl>";
+        } else {
+            prefix = "<ul><li>";
+            suffix = "</li></ul>";
+        }
+        int listId = (list.hashCode() & 0x7fffffff) % 10_000;
+        StringBuilder html = new StringBuilder(pagesPerList * 96).append("<html><body><div id=\"mw-content-text\">");
+        for (int i = 0; i < pagesPerList; i++) {
+            String title = "Author " + listId + " " + i;
+            html.append(prefix).append("<a href=\"/wiki/").append(title.replace(' ', '_')).append("\" title=\"").
+                    append(title).append("\">").append(title).append("</a>").append(suffix).append('\n');
+        }
+        return html.append("</div></body></html>").toString().getBytes(UTF_8);
+    }
+
+    private static String canonicalTitles(String titles) {
+        StringBuilder normalized = new StringBuilder();
+        StringBuilder pages = new StringBuilder();
+        int missing = 0;
+        for (String title : titles.split("\\|")) {
+            String canonical = canonical(title, normalized);
+            if (pages.length() > 0) {
+                pages.append(',');
+            }
+            if (hash(canonical) % 100 == 0) {
+                pages.append("\"-").append(++missing).append("\":{\"ns\":0,\"title\":").append(quote(canonical)).append(",\"missing\":\"\"}");
+            } else {
+                pages.append('"').append(hash(canonical)).append("\":{\"pageid\":").append(hash(canonical)).
+                        append(",\"ns\":0,\"title\":").append(quote(canonical)).append('}');
+            }
+        }
+        return "{\"batchcomplete\":\"\",\"query\":{\"normalized\":[" + normalized + "],\"pages\":{" + pages + "}}}";
+    }
+
+    private String langLinks(String titles, String language) {
+        StringBuilder normalized = new StringBuilder();
+        StringBuilder pages = new StringBuilder();
+        for (String title : titles.split("\\|")) {
+            String canonical = canonical(title, normalized);
+            if (pages.length() > 0) {
+                pages.append(',');
+            }
+            pages.append('"').append(hash(canonical)).append("\":{\"pageid\":").append(hash(canonical)).
+                    append(",\"ns\":0,\"title\":").append(quote(canonical));
+            if (hash(canonical + language) % 10 != 0) {
+                String project = language + ".wikipedia.org";
+                pages.append(",\"langlinks\":[{\"lang\":\"").append(language).append("\",\"url\":").
+                        append(quote(baseUrl() + "/" + project + "/wiki/" + canonical.replace(' ', '_'))).
+                        append(",\"*\":").append(quote(canonical)).append("}]");
+            }
+            pages.append('}');
+        }
+        return "{\"batchcomplete\":\"\",\"query\":{\"normalized\":[" + normalized + "],\"pages\":{" + pages + "}}}";
+    }
+
+    /**
+     * @param rest ".../per-article/&lt;project&gt;/&lt;access&gt;/&lt;agent&gt;/&lt;article&gt;/daily/&lt;from&gt;00/&lt;to&gt;00"
+     */
+    private static void pageViews(HttpExchange exchange, String rest) throws IOException {
+        String[] segments = rest.split("/");
+        int n = segments.length;
+        String article = decode(segments[n - 4]);
+        if (hash(article) % 200 == 0) {
+            respond(exchange, 404, "{\"type\":\"https://mediawiki.org/wiki/HyperSwitch/errors/not_found\",\"title\":\"Not found.\"," +
+                    "\"method\":\"get\",\"detail\":\"The date(s) you used are valid, but we either do not have data for those date(s), " +
+                    "or the project you asked for is not loaded yet.\",\"uri\":" + quote(rest) + "}");
+            return;
+        }
+        LocalDate from = LocalDate.parse(segments[n - 2].substring(0, 8), PAGEVIEWS_DATE);
+        LocalDate to = LocalDate.parse(segments[n - 1].substring(0, 8), PAGEVIEWS_DATE);
+        // skewed like real pages: few pages with many views, many with few
+        int popularity = (int) Math.exp((hash(article) % 1000) / 100.0);
+        StringBuilder items = new StringBuilder("{\"items\":[");
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if (!day.equals(from)) {
+                items.append(',');
+            }
+            items.append("{\"project\":").append(quote(segments[n - 7])).append(",\"article\":").append(quote(article)).
+                    append(",\"granularity\":\"daily\",\"timestamp\":\"").append(day.format(PAGEVIEWS_DATE)).
+                    append("00\",\"access\":\"all-access\",\"agent\":\"user\",\"views\":").
+                    append(popularity + hash(article + day) % (popularity + 1)).append('}');
+        }
+        respond(exchange, 200, items.append("]}").toString());
+    }
+
+    /**
+     * @return title with spaces, its normalization is appended to the normalized entries if it had underscores
+     */
+    private static String canonical(String title, StringBuilder normalized) {
+        String canonical = title.replace('_', ' ');
+        if (!canonical.equals(title)) {
+            if (normalized.length() > 0) {
+                normalized.append(',');
+            }
+            normalized.append("{\"from\":").append(quote(title)).append(",\"to\":").append(quote(canonical)).append('}');
+        }
+        return canonical;
+    }
+
+    private static int hash(String value) {
+        return value.hashCode() & 0x7fffffff;
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            parameters.put(decode(equals < 0 ? parameter : parameter.substring(0, equals)), equals < 0 ? "" : decode(parameter.substring(equals + 1)));
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", body.length > 0 && body[0] == '<' ? "text/html; charset=utf-8" : "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
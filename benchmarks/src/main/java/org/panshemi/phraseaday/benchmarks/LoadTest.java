@@ -0,0 +1,147 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a full export and a broadcast against the {@link FakeApiServer} and reports their throughput and the latency
+ * of every endpoint, read from the metrics MBeans of the project.
+ *
+ * The files of the runs are written to a new directory. The exporter and the bot are configured with their usual VM
+ * properties, which the load test only sets if they are not given, e.g., -DRATE_LIMIT_localhost=100 to see the
+ * adaptive rate limit at work against -DFAKE_MAX_REQUESTS_PER_SECOND=80. Configuration with VM properties:
+ *   * LOADTEST_SUBSCRIBERS: number of subscribers of the broadcast, 10000 by default
+ *   * LOADTEST_DIR: directory of the files of the runs, a new temporary directory by default
+ *   * FAKE_PAGES_PER_LIST and the faults of the server (see {@link FakeApiServer})
+ *
+ * Usage: java -DFAKE_PAGES_PER_LIST=100000 -cp target/benchmarks.jar org.panshemi.phraseaday.benchmarks.LoadTest
+ */
+public final class LoadTest {
+    private static final String[] LANGUAGES = {"en", "fr", "de", "ru"};
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int subscribers = Integer.getInteger("LOADTEST_SUBSCRIBERS", 10_000);
+        Path directory = System.getProperty("LOADTEST_DIR") != null ?
+                Files.createDirectories(Paths.get(System.getProperty("LOADTEST_DIR"))) : Files.createTempDirectory("phraseaday-loadtest");
+
+        try (FakeApiServer server = new FakeApiServer(0)) {
+            server.start();
+            // the classes of the project read their configuration when they are loaded, i.e., after these are set
+            configure(server.baseUrl(), directory);
+            writeSubscribers(directory.resolve("subscribers.snapshot"), subscribers);
+
+            long start = System.nanoTime();
+            runMain("WikiCatalogExport");
+            long exportNanos = System.nanoTime() - start;
+            long pages = Files.lines(directory.resolve("wiki.pages.csv")).count();
+            Map<String, Long> exportRequests = server.requests();
+
+            start = System.nanoTime();
+            runMain("TelegramBotMessageSender");
+            long sendNanos = System.nanoTime() - start;
+            // requests of sendMessage include the retries of throttled and failed messages
+            long messages = deliveredMessages();
+
+            System.out.println();
+            System.out.printf("export:    %d pages in %.1f s, %.1f pages/s, %.1f requests/s%n", pages, seconds(exportNanos),
+                    pages / seconds(exportNanos), exportRequests.values().stream().mapToLong(Long::longValue).sum() / seconds(exportNanos));
+            System.out.printf("broadcast: %d messages to %d subscribers in %.1f s, %.1f messages/s%n", messages, subscribers,
+                    seconds(sendNanos), messages / seconds(sendNanos));
+            System.out.printf("server:    requests %s, throttled %d, failed %d%n", server.requests(), server.throttled(), server.failed());
+            System.out.println();
+            printLatencies();
+            System.out.println();
+            System.out.println("Files of the runs: " + directory);
+        }
+        // the exporter and the bot leave pooled threads behind
+        System.exit(0);
+    }
+
+    private static void configure(String baseUrl, Path directory) {
+        setDefault("WIKI_BASEURL", baseUrl + "/{project}");
+        setDefault("WIKIMEDIA_BASEURL", baseUrl + "/wikimedia.org");
+        setDefault("TELEGRAM_BASEURL", baseUrl + "/bot");
+        // every stand-in host is localhost, it gets the rate limits of them all
+        setDefault("RATE_LIMIT_localhost", "1000");
+        setDefault("HTTP_MAX_CONNECTIONS_PER_ROUTE", "50");
+        // the load test measures requests rather than the cache
+        setDefault("HTTP_CACHE_DIR", "");
+        setDefault("PATH_TO_EXPORT", directory.resolve("wiki.pages.csv").toString());
+        setDefault("IMPORT_FILE_PATH", directory.resolve("wiki.pages.csv").toString());
+        setDefault("RANKED_CATALOG_PATH", directory.resolve("wiki.pages.bin").toString());
+        setDefault("LANGLINKS_PATH", directory.resolve("wiki.langlinks.csv").toString());
+        setDefault("PAGEVIEWS_PATH", directory.resolve("wiki.pageviews.bin").toString());
+        setDefault("SENT_HISTORY_PATH", directory.resolve("sent.history").toString());
+        setDefault("MESSAGES_FILE_PATH", directory.resolve("bot.msg").toString());
+        setDefault("DELIVERY_LOG_PATH", directory.resolve("deliveries.log").toString());
+        setDefault("SUBSCRIBERS_PATH", directory.resolve("subscribers").toString());
+    }
+
+    private static void setDefault(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Writes the subscribers as a snapshot of the subscriber store, with one or all of the languages.
+     */
+    private static void writeSubscribers(Path snapshotPath, int subscribers) throws Exception {
+        List<String> lines = new ArrayList<>(subscribers);
+        for (int id = 1; id <= subscribers; id++) {
+            lines.add(id + "|||" + (id % 3 == 0 ? String.join(",", LANGUAGES) : LANGUAGES[id % LANGUAGES.length]) + "|09:00|UTC");
+        }
+        DataGenerator.writeLines(snapshotPath, lines);
+    }
+
+    private static void runMain(String className) throws Throwable {
+        MethodHandle main = DefaultPackage.main(className);
+        main.invokeExact(new String[0]);
+    }
+
+    /**
+     * Prints count, p50 and p99 of every latency histogram; the percentiles are bucket bounds.
+     */
+    private static void printLatencies() throws Exception {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        Map<String, ObjectName> histograms = new TreeMap<>();
+        for (ObjectName name : mbeans.queryNames(new ObjectName("wikiaday:*"), null)) {
+            if (name.getKeyProperty("name").endsWith("_duration_seconds")) {
+                histograms.put(name.getKeyPropertyListString(), name);
+            }
+        }
+        System.out.printf("%-100s %10s %10s %10s%n", "latency", "count", "p50 (s)", "p99 (s)");
+        for (Map.Entry<String, ObjectName> histogram : histograms.entrySet()) {
+            System.out.printf("%-100s %10d %10s %10s%n", histogram.getKey(),
+                    (Long) mbeans.getAttribute(histogram.getValue(), "Count"),
+                    mbeans.getAttribute(histogram.getValue(), "P50Seconds"),
+                    mbeans.getAttribute(histogram.getValue(), "P99Seconds"));
+        }
+    }
+
+    /**
+     * @return messages that Telegram accepted, counted by the broadcaster
+     */
+    private static long deliveredMessages() throws Exception {
+        ObjectName delivered = new ObjectName("wikiaday:name=telegram_messages_total,outcome=" + ObjectName.quote("delivered"));
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        return mbeans.isRegistered(delivered) ? (Long) mbeans.getAttribute(delivered, "Count") : 0;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
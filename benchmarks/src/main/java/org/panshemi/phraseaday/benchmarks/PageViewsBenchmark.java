@@ -0,0 +1,46 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Streaming parse of a pageviews response: a year of daily items for a backfill, a single day for a daily refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageViewsBenchmark {
+    private static final MethodHandle PARSE = DefaultPackage.PAGE_VIEWS_PARSE.asType(methodType(Object.class, String.class));
+
+    @Param({"1", "366"})
+    public int days;
+
+    private String response;
+
+    @Setup
+    public void setUp() {
+        response = DataGenerator.pageViewsResponse(days);
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return (Object) PARSE.invokeExact(response);
+    }
+}
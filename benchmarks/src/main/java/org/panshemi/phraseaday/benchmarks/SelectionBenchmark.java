@@ -0,0 +1,91 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Selection of the page of the day for every subscriber over the real catalog and sent messages. Subscribers have
+ * one or all of the languages, so they fall into a handful of groups like real subscribers with default settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SelectionBenchmark {
+    private static final MethodHandle SELECT = DefaultPackage.SELECTION_ENGINE_SELECT.asType(methodType(Map.class, Object.class, LocalDate.class, Collection.class));
+    private static final String[] LANGUAGES = {"en", "fr", "de", "ru"};
+
+    @Param({"1000", "100000"})
+    public int subscribers;
+
+    private Path directory;
+    private Object history;
+    private Object engine;
+    private List<Object> users;
+    private final LocalDate date = LocalDate.of(2016, 9, 11);
+
+    @Setup
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("phraseaday-selection");
+        Object catalog = DefaultPackage.RANKED_CATALOG_OF.invoke(parsePages());
+        history = DefaultPackage.SENT_HISTORY_OPEN.invoke(directory.resolve("sent.history"), DataGenerator.SEED_MESSAGES);
+        Map<String, String> categories = new LinkedHashMap<>();
+        categories.put("en", "List_of_English_writers");
+        categories.put("fr", "List_of_French-language_authors");
+        categories.put("de", "List_of_German-language_authors");
+        categories.put("ru", "List_of_Russian-language_writers");
+        engine = DefaultPackage.SELECTION_ENGINE_NEW.invoke(catalog, history, categories);
+
+        Random random = new Random(subscribers);
+        users = new ArrayList<>(subscribers);
+        for (int id = 0; id < subscribers; id++) {
+            String languages = id % 3 == 0 ? String.join(",", LANGUAGES) : LANGUAGES[random.nextInt(LANGUAGES.length)];
+            users.add(DefaultPackage.TELEGRAM_USER_FROM_STRING.invoke(id + "|||" + languages + "|09:00|UTC"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        DefaultPackage.SENT_HISTORY_CLOSE.invoke(history);
+        DataGenerator.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Map<?, ?> select() throws Throwable {
+        return (Map<?, ?>) SELECT.invokeExact(engine, date, (Collection) users);
+    }
+
+    private static List<Object> parsePages() throws Throwable {
+        List<Object> pages = new ArrayList<>();
+        for (String line : Files.readAllLines(DataGenerator.SEED_PAGES)) {
+            pages.add(DefaultPackage.WIKI_PAGE_FROM_STRING.invoke(line));
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,91 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Loading of the sent history, which replaced reading every message of bot.msg on every send: the index is
+ * memory-mapped, or rebuilt from the log when it is missing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SentHistoryBenchmark {
+    private static final MethodHandle OPEN = DefaultPackage.SENT_HISTORY_OPEN.asType(methodType(Object.class, Path.class, Path.class));
+    private static final MethodHandle IS_SENT = DefaultPackage.SENT_HISTORY_IS_SENT.asType(methodType(boolean.class, Object.class, String.class, String.class, String.class));
+    private static final MethodHandle CLOSE = DefaultPackage.SENT_HISTORY_CLOSE.asType(methodType(void.class, Object.class));
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private Path logPath;
+    private Path indexPath;
+    private Object history;
+    private String[] pageIds;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("phraseaday-history");
+        Path messagesPath = directory.resolve("bot.msg");
+        List<String> messages = DataGenerator.messages(rows);
+        DataGenerator.writeLines(messagesPath, messages);
+        logPath = directory.resolve("sent.history");
+        indexPath = directory.resolve("sent.history.idx");
+        // imports the messages and builds the index
+        CLOSE.invokeExact((Object) OPEN.invokeExact(logPath, messagesPath));
+        history = (Object) OPEN.invokeExact(logPath, (Path) null);
+        pageIds = messages.stream().map(message -> message.split("\\|")[1]).toArray(String[]::new);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        CLOSE.invokeExact(history);
+        DataGenerator.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Object loadIndex() throws Throwable {
+        Object loaded = (Object) OPEN.invokeExact(logPath, (Path) null);
+        CLOSE.invokeExact(loaded);
+        return loaded;
+    }
+
+    @Benchmark
+    public Object rebuildIndex() throws Throwable {
+        Files.delete(indexPath);
+        Object rebuilt = (Object) OPEN.invokeExact(logPath, (Path) null);
+        CLOSE.invokeExact(rebuilt);
+        return rebuilt;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean isSent() throws Throwable {
+        String pageId = pageIds[next];
+        next = next + 1 == pageIds.length ? 0 : next + 1;
+        return (boolean) IS_SENT.invokeExact(history, "59323870", "List_of_English_writers", pageId);
+    }
+}
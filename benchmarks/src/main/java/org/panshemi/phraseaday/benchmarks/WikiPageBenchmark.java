@@ -0,0 +1,65 @@
+package org.panshemi.phraseaday.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Parsing and formatting of a single catalog line, run for every page whenever the catalog is read or exported.
+ * The lines rotate through a sample of the scaled catalog, so the branch predictor does not learn a single line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WikiPageBenchmark {
+    private static final int SAMPLE_SIZE = 10_000;
+    private static final MethodHandle FROM_STRING = DefaultPackage.WIKI_PAGE_FROM_STRING.asType(methodType(Object.class, String.class));
+    private static final MethodHandle TO_STRING = DefaultPackage.WIKI_PAGE_TO_STRING.asType(methodType(String.class, Object.class));
+
+    private String[] lines;
+    private Object[] pages;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        List<String> sample = DataGenerator.pages(SAMPLE_SIZE);
+        lines = sample.toArray(new String[0]);
+        pages = new Object[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            pages[i] = (Object) FROM_STRING.invokeExact(lines[i]);
+        }
+    }
+
+    @Benchmark
+    public Object fromString() throws Throwable {
+        return (Object) FROM_STRING.invokeExact(lines[nextIndex()]);
+    }
+
+    /** Includes the checks of every field before it is formatted */
+    @Benchmark
+    public String toStringWithChecks() throws Throwable {
+        return (String) TO_STRING.invokeExact(pages[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == SAMPLE_SIZE ? 0 : index + 1;
+        return index;
+    }
+}
@@ -1,10 +1,11 @@
 curl -o books.csv -G 'https://query.wikidata.org/sparql' \
      --header "Accept: text/csv"  \
      --data-urlencode query='
- #Books with a title from EN, FR, RU, GE wiki pages 
- SELECT ?book ?title WHERE {
+ #Books with a title from EN, FR, RU, GE wiki pages and their English Wikipedia article
+ SELECT ?book ?title ?article WHERE {
   ?book wdt:P31 wd:Q571;
   OPTIONAL { ?book wdt:P1476 ?title. }
+  OPTIONAL { ?article schema:about ?book; schema:isPartOf <https://en.wikipedia.org/>. }
   SERVICE wikibase:label { bd:serviceParam wikibase:language "en,fr,ru,ge". }
  }
  #LIMIT 100
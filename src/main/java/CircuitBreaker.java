@@ -0,0 +1,94 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails requests to a host fast while the host is down, so that workers are not tied up waiting for timeouts.
+ *
+ * After CIRCUIT_FAILURE_THRESHOLD consecutive failures (5 by default) the circuit opens and requests are refused for
+ * CIRCUIT_OPEN_SECONDS (30 by default). Then a single trial request is let through: if it succeeds the circuit
+ * closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+    private static final ConcurrentMap<String, CircuitBreaker> HOST_BREAKERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    public static CircuitBreaker forHost(String host) {
+        return HOST_BREAKERS.computeIfAbsent(host, h -> {
+            CircuitBreaker breaker = new CircuitBreaker(h,
+                    Integer.getInteger("CIRCUIT_FAILURE_THRESHOLD", 5),
+                    TimeUnit.SECONDS.toMillis(Integer.getInteger("CIRCUIT_OPEN_SECONDS", 30)));
+            Metrics.gauge("http_circuit_state", "Circuit of a host: 0 closed, 1 open, 2 half-open", () -> breaker.state().ordinal(), "host", h);
+            return breaker;
+        });
+    }
+
+    /**
+     * @throws CircuitOpenException if the request is refused
+     */
+    public synchronized void beforeRequest() throws CircuitOpenException {
+        switch (state) {
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    throw new CircuitOpenException("Circuit of '" + name + "' is open after " + failures + " failures");
+                }
+                log.info("Let a trial request through the circuit of '{}'", name);
+                state = State.HALF_OPEN;
+                break;
+            case HALF_OPEN:
+                throw new CircuitOpenException("Circuit of '" + name + "' waits for its trial request");
+            default:
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Close the circuit of '{}'", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            log.warn("Open the circuit of '{}' for {} s after {} failures", name, TimeUnit.NANOSECONDS.toSeconds(openNanos), failures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads records of RFC 4180 CSV one at a time, so that a file or a response of any size is read with the memory of
+ * a single record. Fields may be quoted, quoted fields may contain separators, line breaks and doubled quotes.
+ * Records end with LF or CRLF. A quoted field that is not followed by a separator or the end of the record is
+ * malformed. Not thread-safe.
+ */
+public class CsvReader implements Closeable {
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return fields of the next record, null at the end of the input
+     */
+    public String[] readRecord() throws IOException {
+        int c = read();
+        if (c == EOF)
+            return null;
+        record.clear();
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                c = readQuoted();
+                if (c != ',' && c != '\n' && c != '\r' && c != EOF)
+                    throw new IOException("Unexpected character '" + (char) c + "' after quoted field: " + field);
+            } else {
+                while (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                    field.append((char) c);
+                    c = read();
+                }
+            }
+            record.add(field.toString());
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r' && peek() == '\n')
+                read();
+            return record.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Reads a quoted field into {@link #field}.
+     *
+     * @return character after the closing quote
+     */
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == EOF)
+                throw new IOException("Unterminated quoted field: " + field);
+            if (c == '"') {
+                c = read();
+                if (c != '"')
+                    return c;
+            }
+            field.append((char) c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill())
+            return EOF;
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill())
+            return EOF;
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer);
+        if (read <= 0)
+            return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
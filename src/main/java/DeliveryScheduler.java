@@ -0,0 +1,229 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resident mode of {@link TelegramBotMessageSender}: one JVM keeps the catalog, the sent history, the subscribers
+ * and the Telegram client open and sends every subscriber its page of the day once its delivery time has come in
+ * its time zone, instead of a new JVM that loads them all for a single send.
+ *
+ * Every tick sends to the subscribers that are due. Subscribers whose local date is the same are selected and
+ * broadcast together, the local date identifies the broadcast in the delivery log like the date of a run of
+ * {@link TelegramBotMessageSender}, so neither a restart of the daemon nor a run of the sender sends the message of
+ * a day twice. The tick also picks up the changes of the subscribers by {@link TelegramWikiBot} and a new export of
+ * the catalog, which replaces the catalog in use between two ticks once all the files of the export are written.
+ *
+ * The daemon is the only writer of the sent history: it holds the lock of {@link TelegramBotMessageSender#lockSending()}
+ * while it runs, so a run of the sender fails instead of sending at the same time.
+ *
+ * Configuration with VM properties:
+ *   * DAEMON_TICK_SECONDS: interval of checking for due deliveries and new exports, 10 by default
+ *   * the paths of {@link TelegramBotMessageSender}
+ */
+public class DeliveryScheduler implements Closeable {
+    private static final Logger log = LogManager.getLogger(DeliveryScheduler.class);
+
+    private static final long TICK_SECONDS = Long.getLong("DAEMON_TICK_SECONDS", 10);
+    private static final long SHUTDOWN_SECONDS = 30;
+    private static final Metrics.Histogram tickLatency = Metrics.histogram("delivery_tick_duration_seconds", "Time of a tick of the delivery daemon, including its broadcasts");
+    private static final Metrics.Counter catalogReloads = Metrics.counter("delivery_catalog_reloads_total", "Catalogs loaded by the delivery daemon after a new export");
+
+    private final SentHistory history;
+    private final SubscriberStore subscribers;
+    private final TelegramBroadcaster broadcaster;
+    private final Clock clock;
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    /** Subscribers that have been sent the message of a date, by date */
+    private final Map<LocalDate, Set<Long>> delivered = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "delivery-scheduler"));
+
+    public DeliveryScheduler(SentHistory history, SubscriberStore subscribers, TelegramBroadcaster broadcaster, Clock clock) {
+        this.history = history;
+        this.subscribers = subscribers;
+        this.broadcaster = broadcaster;
+        this.clock = clock;
+    }
+
+    public static void main(String[] args) throws IOException {
+        FileChannel lock = TelegramBotMessageSender.lockSending();
+        SentHistory history = SentHistory.open(TelegramBotMessageSender.SENT_HISTORY_PATH, TelegramBotMessageSender.MESSAGES_FILE_PATH);
+        SubscriberStore subscribers = TelegramBotMessageSender.openSubscribers();
+        TelegramBroadcaster broadcaster = new TelegramBroadcaster(TelegramBotMessageSender.BASEURL + TelegramBotMessageSender.TOKEN,
+                TelegramBotMessageSender.DELIVERY_LOG_PATH);
+        DeliveryScheduler daemon = new DeliveryScheduler(history, subscribers, broadcaster, Clock.systemUTC());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+                broadcaster.close();
+                subscribers.close();
+                history.close();
+                lock.close();
+            } catch (IOException e) {
+                log.error("Could not stop the delivery daemon", e);
+            }
+        }, "delivery-shutdown"));
+        daemon.start();
+    }
+
+    public void start() {
+        log.info("Deliver pages of the day to {} subscribers, checking every {} s", subscribers.size(), TICK_SECONDS);
+        scheduler.scheduleWithFixedDelay(this::tick, 0, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Failures are logged and the next tick tries again, an exception would cancel the ticks.
+     */
+    private void tick() {
+        long start = System.nanoTime();
+        try {
+            subscribers.refresh();
+            Catalog current = reloadCatalogIfExported();
+            if (current != null)
+                deliverDue(current);
+        } catch (Exception e) {
+            log.error("Could not deliver the pages of the day", e);
+        } finally {
+            tickLatency.observeSince(start);
+        }
+    }
+
+    /**
+     * @return catalog to select from, null if there is none yet
+     */
+    private Catalog reloadCatalogIfExported() throws IOException {
+        Catalog current = catalog.get();
+        List<FileTime> exported = Catalog.modifiedTimes();
+        if (current != null && (current.exported.equals(exported) || !Catalog.isComplete(exported)))
+            return current;
+        if (!Files.exists(TelegramBotMessageSender.IMPORT_FILE_PATH) && !Files.exists(TelegramBotMessageSender.RANKED_CATALOG_PATH)) {
+            log.warn("No catalog at {} or {}", TelegramBotMessageSender.IMPORT_FILE_PATH, TelegramBotMessageSender.RANKED_CATALOG_PATH);
+            return current;
+        }
+        RankedCatalog ranked = RankedCatalog.load(TelegramBotMessageSender.IMPORT_FILE_PATH, TelegramBotMessageSender.RANKED_CATALOG_PATH);
+        LangLinks langLinks = LangLinks.load(TelegramBotMessageSender.LANGLINKS_PATH);
+        Catalog reloaded = new Catalog(exported, langLinks, new SelectionEngine(ranked, history, TelegramBotMessageSender.AVAILABLE_CATEGORIES));
+        catalog.set(reloaded);
+        if (current != null) {
+            catalogReloads.increment();
+            log.info("Reloaded the catalog after a new export");
+        }
+        return reloaded;
+    }
+
+    void deliverDue(Catalog current) throws IOException {
+        Instant now = clock.instant();
+        Map<ZoneId, ZonedDateTime> localNow = new HashMap<>();
+        Map<LocalDate, List<TelegramWikiBot.TelegramUser>> due = new TreeMap<>();
+        for (TelegramWikiBot.TelegramUser user : subscribers.all()) {
+            ZonedDateTime local = localNow.computeIfAbsent(user.getTimeZone(), now::atZone);
+            if (local.toLocalTime().isBefore(user.getDeliveryTime()))
+                continue;
+            LocalDate date = local.toLocalDate();
+            if (!delivered(date).contains(user.getId()))
+                due.computeIfAbsent(date, d -> new ArrayList<>()).add(user);
+        }
+        for (Map.Entry<LocalDate, List<TelegramWikiBot.TelegramUser>> users : due.entrySet()) {
+            log.info("Deliver pages of {} to {} subscribers", users.getKey(), users.getValue().size());
+            TelegramBotMessageSender.send(users.getKey(), users.getValue(), current.engine, current.langLinks, history, broadcaster);
+            // failed deliveries and subscribers without a page are tried again by the next tick
+            delivered.get(users.getKey()).addAll(broadcaster.completed(users.getKey().toString()));
+        }
+        // local dates are at most a day apart from the date in UTC
+        LocalDate oldest = now.atZone(ZoneOffset.UTC).toLocalDate().minusDays(2);
+        delivered.keySet().removeIf(date -> date.isBefore(oldest));
+    }
+
+    /**
+     * The delivery log is not read up front: after a restart the subscribers of the date are selected once more, so
+     * that the broadcast skips them and a page it delivered before the restart is recorded as sent if it was not.
+     *
+     * @return subscribers that have been sent the message of the date by this daemon
+     */
+    private Set<Long> delivered(LocalDate date) {
+        return delivered.computeIfAbsent(date, d -> new HashSet<>());
+    }
+
+    /**
+     * Stops the ticks; a broadcast in progress is given some time to finish, so that its pages are recorded as sent.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Interrupt the delivery after {} s", SHUTDOWN_SECONDS);
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Catalog in use with the times of the export files it was loaded from */
+    static class Catalog {
+        final List<FileTime> exported;
+        final LangLinks langLinks;
+        final SelectionEngine engine;
+
+        Catalog(List<FileTime> exported, LangLinks langLinks, SelectionEngine engine) {
+            this.exported = exported;
+            this.langLinks = langLinks;
+            this.engine = engine;
+        }
+
+        /**
+         * @return modification times of the export, of the ranked catalog and of the language links, in the order
+         * {@link WikiCatalogExport} writes them, null if missing
+         */
+        static List<FileTime> modifiedTimes() throws IOException {
+            List<FileTime> times = new ArrayList<>();
+            for (Path path : Arrays.asList(TelegramBotMessageSender.IMPORT_FILE_PATH, TelegramBotMessageSender.RANKED_CATALOG_PATH,
+                    TelegramBotMessageSender.LANGLINKS_PATH)) {
+                times.add(Files.exists(path) ? Files.getLastModifiedTime(path) : null);
+            }
+            return times;
+        }
+
+        /**
+         * An export writes the CSV, compiles it and then resolves the language links; until the last of the files
+         * is written, a reload would read the CSV or miss the links of new pages.
+         *
+         * @return whether every existing file is not older than the one written before it
+         */
+        static boolean isComplete(List<FileTime> times) {
+            FileTime previous = null;
+            for (FileTime time : times) {
+                if (time == null)
+                    continue;
+                if (previous != null && time.compareTo(previous) < 0)
+                    return false;
+                previous = time;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.lang.System.getProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Persistent on-disk cache of HTTP responses keyed by URL. An entry is one file named after the SHA-1 of the URL.
+ *
+ * Time-to-live policy per endpoint:
+ *   * MediaWiki API (/w/api.php) responses expire after HTTP_CACHE_API_TTL_MINUTES, 1 day by default
+ *   * wiki pages (/wiki/...) expire after HTTP_CACHE_DEFAULT_TTL_MINUTES, 1 hour by default
+ *   * per-article pageviews are not cached, {@link PageViewStore} keeps the views of past days
+ *   * anything else, e.g., Telegram API calls, is not cached
+ * Expired entries with an ETag or Last-Modified are revalidated with a conditional request.
+ *
+ * Configuration with VM properties:
+ *   * HTTP_CACHE_DIR: cache directory, .cache/http by default; an empty value disables the cache
+ *   * HTTP_CACHE_MAX_MB: size of the cache, the least recently used entries are evicted above it, 512 by default
+ */
+public class HttpCache {
+    private static final Logger log = LogManager.getLogger(HttpCache.class);
+
+    private static final int ENTRY_MAGIC = 0x48434531; // HCE1
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long apiTtlMillis = TimeUnit.MINUTES.toMillis(Long.getLong("HTTP_CACHE_API_TTL_MINUTES", TimeUnit.DAYS.toMinutes(1)));
+    private final long defaultTtlMillis = TimeUnit.MINUTES.toMillis(Long.getLong("HTTP_CACHE_DEFAULT_TTL_MINUTES", 60));
+    private final AtomicLong sizeBytes = new AtomicLong(-1);
+
+    public HttpCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cache configured with VM properties or null if caching is disabled
+     */
+    public static HttpCache fromProperties() {
+        String directory = getProperty("HTTP_CACHE_DIR", ".cache/http");
+        if (directory.trim().isEmpty()) {
+            return null;
+        }
+        return new HttpCache(Paths.get(directory), Long.getLong("HTTP_CACHE_MAX_MB", 512) * 1024 * 1024);
+    }
+
+    /**
+     * @return time-to-live of the response in milliseconds or 0 for responses that are not cached
+     */
+    public long ttlMillis(String url) {
+        if (url.contains("/metrics/pageviews/per-article/")) {
+            return 0;
+        }
+        if (url.contains("/w/api.php")) {
+            return apiTtlMillis;
+        }
+        if (url.contains("/wiki/")) {
+            return defaultTtlMillis;
+        }
+        return 0;
+    }
+
+    public boolean isCacheable(String url) {
+        return ttlMillis(url) > 0;
+    }
+
+    /**
+     * @return cached entry (possibly expired) or null if there is none
+     */
+    public Entry get(String url) {
+        Path path = pathOf(url);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != ENTRY_MAGIC || !url.equals(in.readUTF())) {
+                return null;
+            }
+            long expiresAt = in.readLong();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            // the modification time of the file is the access time used for eviction
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(expiresAt, etag, lastModified, new String(body, UTF_8));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not read cache entry of {}: {}", url, e.toString());
+            return null;
+        }
+    }
+
+    public void put(String url, String etag, String lastModified, String body) {
+        long ttl = ttlMillis(url);
+        if (ttl <= 0) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttl;
+        Path path = pathOf(url);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            byte[] bytes = body.getBytes(UTF_8);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(ENTRY_MAGIC);
+                out.writeUTF(url);
+                out.writeLong(expiresAt);
+                out.writeUTF(etag == null ? "" : etag);
+                out.writeUTF(lastModified == null ? "" : lastModified);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            long previousSize = Files.exists(path) ? Files.size(path) : 0;
+            long entrySize = Files.size(tempPath);
+            initSize(); // the size is counted once before the first entry is added
+            Files.move(tempPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            if (sizeBytes.addAndGet(entrySize - previousSize) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("Could not cache response of {}: {}", url, e.toString());
+        }
+    }
+
+    private void initSize() throws IOException {
+        if (sizeBytes.get() < 0) {
+            synchronized (this) {
+                if (sizeBytes.get() < 0) {
+                    sizeBytes.set(entries().stream().mapToLong(HttpCache::sizeOf).sum());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is within 90% of its size.
+     */
+    private synchronized void evict() throws IOException {
+        List<Path> entries = entries();
+        entries.sort(Comparator.comparing(HttpCache::lastModifiedTime));
+        long targetBytes = maxBytes / 10 * 9;
+        int evicted = 0;
+        for (Path entry : entries) {
+            if (sizeBytes.get() <= targetBytes) {
+                break;
+            }
+            long size = sizeOf(entry);
+            if (Files.deleteIfExists(entry)) {
+                sizeBytes.addAndGet(-size);
+                evicted++;
+            }
+        }
+        log.info("Evicted {} entries from the http cache {}", evicted, directory);
+    }
+
+    private List<Path> entries() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).filter(path -> !path.toString().endsWith(".tmp")).collect(toList());
+        }
+    }
+
+    private Path pathOf(String url) {
+        String hash = sha1(url);
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String sha1(String value) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8))) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Cached response body with the validators needed to revalidate it.
+     */
+    public static class Entry {
+        final long expiresAt;
+        final String etag;
+        final String lastModified;
+        final String body;
+
+        Entry(long expiresAt, String etag, String lastModified, String body) {
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public boolean isExpired() {
+            return expiresAt < System.currentTimeMillis();
+        }
+
+        public boolean isRevalidatable() {
+            return etag != null || lastModified != null;
+        }
+    }
+}
@@ -1,25 +1,479 @@
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * HTTP access shared by the exporter and the bot. All requests go through a single pooled client, so that
+ * connections to the same host are kept alive and reused instead of paying a TLS handshake per request.
+ * Responses are transparently decompressed when the server sends them gzipped, and responses of the wiki endpoints
+ * are kept in the persistent {@link HttpCache}.
+ *
+ * Configuration with VM properties:
+ *   * HTTP_CONNECT_TIMEOUT_MS: connect timeout, 10000 by default
+ *   * HTTP_READ_TIMEOUT_MS: socket read timeout, 30000 by default
+ *   * HTTP_MAX_CONNECTIONS: total number of pooled connections, 50 by default
+ *   * HTTP_MAX_CONNECTIONS_PER_ROUTE: number of pooled connections per host, 10 by default
+ *   * HTTP_KEEP_ALIVE_MS: how long an idle connection is kept, 30000 by default
+ *   * HTTP_MAX_ATTEMPTS: attempts of a GET request that is throttled or fails, 4 by default
+ *
+ * Requests to a host share its adaptive {@link RateLimiter} and its {@link CircuitBreaker}. Requests, their latency,
+ * retries, throttling and cache hits are recorded per host and endpoint in {@link Metrics}.
+ */
 public class HttpUtils {
-    public static Object getJSONResource(String url) throws IOException, ParseException {
-        CloseableHttpClient httpClient = HttpClientBuilder.create().disableCookieManagement().build();
-        return getJSONResource(httpClient, url);
+    private static final Logger log = LogManager.getLogger(HttpUtils.class);
+
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("HTTP_CONNECT_TIMEOUT_MS", 10_000);
+    private static final int READ_TIMEOUT_MS = Integer.getInteger("HTTP_READ_TIMEOUT_MS", 30_000);
+    private static final int MAX_CONNECTIONS = Integer.getInteger("HTTP_MAX_CONNECTIONS", 50);
+    private static final int MAX_CONNECTIONS_PER_ROUTE = Integer.getInteger("HTTP_MAX_CONNECTIONS_PER_ROUTE", 10);
+    private static final long KEEP_ALIVE_MS = Long.getLong("HTTP_KEEP_ALIVE_MS", 30_000L);
+    private static final String USER_AGENT = "wikiaday/0.5 (https://github.com/mikpan/wikiaday)";
+    private static final int MAX_ATTEMPTS = Integer.getInteger("HTTP_MAX_ATTEMPTS", 4);
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+    /** Path up to a wiki page, an API script or a pageviews metric */
+    private static final Pattern KNOWN_ENDPOINT = Pattern.compile("^.*?(/wiki(?=/)|/w/api\\.php|/api/rest_v1/metrics/[^/]+/[^/]+)");
+    /** Telegram API method, the bot token follows "bot" */
+    private static final Pattern TELEGRAM_METHOD = Pattern.compile("^(.*?)/bot[^/]*/([^/]+)$");
+    private static final Pattern TELEGRAM_TOKEN = Pattern.compile("/bot[^/]+/");
+    /** Not among the constants of HttpStatus */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final CloseableHttpClient httpClient = createHttpClient();
+    private static final ExecutorService asyncExecutor = createAsyncExecutor();
+    private static final HttpCache cache = HttpCache.fromProperties();
+    private static final ConcurrentMap<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+    private static final Metrics.Counter cacheHits = cacheRequests("hit");
+    private static final Metrics.Counter cacheRevalidations = cacheRequests("revalidated");
+    private static final Metrics.Counter cacheMisses = cacheRequests("miss");
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(HttpUtils::close, "http-client-shutdown"));
     }
 
-    private static Object getJSONResource(CloseableHttpClient httpClient, String url) throws IOException, ParseException {
+    public static Object getJSONResource(String url) throws IOException, ParseException {
         HttpGet request = new HttpGet(url);
         request.addHeader("content-type", "application/json");
-        HttpResponse result = httpClient.execute(request);
-        String json = EntityUtils.toString(result.getEntity(), "UTF-8");
+        String json = body(execute(request), request);
         JSONParser parser = new JSONParser();
         return parser.parse(json);
     }
+
+    /**
+     * Fetches the JSON resource on the shared executor, failures complete the future exceptionally.
+     */
+    public static CompletableFuture<Object> getJSONResourceAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getJSONResource(url);
+            } catch (IOException | ParseException e) {
+                throw new CompletionException("Could not retrieve JSON resource: " + url, e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Fetches the resource as a string, e.g., an HTML page to be parsed with Jsoup.
+     *
+     * @throws IOException if the response status is not 200, e.g., of an error page, once the retries are exhausted
+     */
+    public static String getResource(String url) throws IOException {
+        HttpGet request = new HttpGet(url);
+        return body(execute(request), request);
+    }
+
+    /**
+     * Fetches the resource, the response is returned whatever its status, e.g., a 404 that tells that there is no
+     * data. Throttled requests and server errors are retried.
+     */
+    public static Response get(String url) throws IOException {
+        return execute(new HttpGet(url));
+    }
+
+    /**
+     * Streams the resource to the reader, e.g., a large query result that does not fit in a string. The request goes
+     * through the circuit breaker and the rate limiter of its host, but it is neither cached nor retried: the
+     * reader may have consumed a part of the response when it fails.
+     *
+     * @throws IOException if the response status is not 200, or if reading fails
+     */
+    public static void readResource(String url, String accept, ResourceReader reader) throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.addHeader(HttpHeaders.ACCEPT, accept);
+        String host = request.getURI().getHost();
+        CircuitBreaker breaker = CircuitBreaker.forHost(host);
+        String endpoint = endpoint(request.getURI().getPath());
+        EndpointMetrics metrics = endpointMetrics.computeIfAbsent(host + endpoint, key -> new EndpointMetrics(host, endpoint));
+        // a trial request of a half-open breaker must not be left without an outcome by an interrupted wait
+        RateLimiter.forHost(host).acquire();
+        try {
+            breaker.beforeRequest();
+        } catch (CircuitBreaker.CircuitOpenException e) {
+            metrics.rejected.increment();
+            throw e;
+        }
+        long start = System.nanoTime();
+        CloseableHttpResponse httpResponse;
+        try {
+            httpResponse = httpClient.execute(request);
+        } catch (IOException e) {
+            metrics.latency.observeSince(start);
+            metrics.errors.increment();
+            breaker.onFailure();
+            throw e;
+        }
+        try {
+            int status = httpResponse.getStatusLine().getStatusCode();
+            metrics.requests(status).increment();
+            HttpEntity entity = httpResponse.getEntity();
+            // the server is up if it responds, however it does
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                breaker.onFailure();
+            else
+                breaker.onSuccess();
+            if (status != HttpStatus.SC_OK || entity == null)
+                throw new IOException("Unexpected response status " + status + " of " + redact(url));
+            try (Reader content = new InputStreamReader(entity.getContent(), UTF_8)) {
+                reader.read(content);
+            }
+        } finally {
+            // the latency of a streamed request includes reading its response
+            metrics.latency.observeSince(start);
+            httpResponse.close();
+        }
+    }
+
+    /** Reads the content of a streamed response */
+    @FunctionalInterface
+    public interface ResourceReader {
+        void read(Reader content) throws IOException;
+    }
+
+    /**
+     * Posts the parameters as a form, the response is returned whatever its status. Throttled posts are not retried,
+     * the caller decides whether the post may be repeated.
+     */
+    public static Response postForm(String url, Map<String, String> parameters) throws IOException {
+        HttpPost request = new HttpPost(url);
+        List<NameValuePair> form = new ArrayList<>(parameters.size());
+        parameters.forEach((name, value) -> form.add(new BasicNameValuePair(name, value)));
+        request.setEntity(new UrlEncodedFormEntity(form, UTF_8));
+        return send(request, 1);
+    }
+
+    private static String body(Response response, HttpGet request) throws IOException {
+        if (response.status != HttpStatus.SC_OK)
+            throw new IOException("Unexpected response status " + response.status + " of " + redact(request.getURI().toString()));
+        return response.body;
+    }
+
+    /**
+     * @return response of the cache or of the server, a revalidated cached response has status 200
+     */
+    private static Response execute(HttpGet request) throws IOException {
+        String url = request.getURI().toString();
+        HttpCache.Entry cached = null;
+        if (cache != null && cache.isCacheable(url)) {
+            cached = cache.get(url);
+            if (cached != null && !cached.isExpired()) {
+                cacheHits.increment();
+                return cachedResponse(cached);
+            }
+            if (cached != null && cached.isRevalidatable()) {
+                if (cached.etag != null)
+                    request.addHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+                if (cached.lastModified != null)
+                    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+
+        Response response = send(request, MAX_ATTEMPTS);
+        if (response.status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            log.debug("Revalidated cached response of {}", url);
+            cacheRevalidations.increment();
+            cache.put(url, cached.etag, cached.lastModified, cached.body);
+            return cachedResponse(cached);
+        }
+        if (cache != null && cache.isCacheable(url)) {
+            cacheMisses.increment();
+        }
+        if (response.status == HttpStatus.SC_OK && cache != null) {
+            cache.put(url, response.etag, response.lastModified, response.body);
+        }
+        return response;
+    }
+
+    /**
+     * Sends the request through the circuit breaker and the rate limiter of its host. Throttled requests, server
+     * errors and I/O failures are retried with jittered exponential backoff, or after the Retry-After time; the
+     * response of the last attempt is returned whatever its status.
+     */
+    private static Response send(HttpRequestBase request, int maxAttempts) throws IOException {
+        String host = request.getURI().getHost();
+        RateLimiter limiter = RateLimiter.forHost(host);
+        CircuitBreaker breaker = CircuitBreaker.forHost(host);
+        String endpoint = endpoint(request.getURI().getPath());
+        EndpointMetrics metrics = endpointMetrics.computeIfAbsent(host + endpoint, key -> new EndpointMetrics(host, endpoint));
+        for (int attempt = 1; ; attempt++) {
+            if (attempt > 1)
+                metrics.retries.increment();
+            // a trial request of a half-open breaker must not be left without an outcome by an interrupted wait
+            limiter.acquire();
+            try {
+                breaker.beforeRequest();
+            } catch (CircuitBreaker.CircuitOpenException e) {
+                metrics.rejected.increment();
+                throw e;
+            }
+            Response response;
+            long start = System.nanoTime();
+            try (CloseableHttpResponse httpResponse = httpClient.execute(request)) {
+                // consuming the entity releases the connection back to the pool
+                HttpEntity entity = httpResponse.getEntity();
+                response = new Response(httpResponse.getStatusLine().getStatusCode(),
+                        entity == null ? "" : EntityUtils.toString(entity, "UTF-8"),
+                        headerValue(httpResponse, HttpHeaders.RETRY_AFTER),
+                        headerValue(httpResponse, HttpHeaders.ETAG),
+                        headerValue(httpResponse, HttpHeaders.LAST_MODIFIED));
+            } catch (IOException e) {
+                metrics.latency.observeSince(start);
+                metrics.errors.increment();
+                breaker.onFailure();
+                if (attempt >= maxAttempts)
+                    throw e;
+                log.warn("Retry {} {} after attempt {}: {}", request.getMethod(), redact(request.getURI().toString()), attempt, e.toString());
+                backoff(backoffMillis(attempt));
+                continue;
+            }
+
+            metrics.latency.observeSince(start);
+            metrics.requests(response.status).increment();
+            long retryAfterMillis = 0;
+            if (response.status == SC_TOO_MANY_REQUESTS || response.status == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                metrics.throttled.increment();
+                retryAfterMillis = retryAfterMillis(response.retryAfter);
+                limiter.onThrottled(retryAfterMillis);
+                if (response.status == HttpStatus.SC_SERVICE_UNAVAILABLE)
+                    breaker.onFailure();
+                else
+                    breaker.onSuccess();
+            } else if (response.status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                breaker.onFailure();
+            } else {
+                limiter.onSuccess();
+                breaker.onSuccess();
+                return response;
+            }
+            if (attempt >= maxAttempts)
+                return response;
+            log.warn("Retry {} {} after attempt {} ({})", request.getMethod(), redact(request.getURI().toString()), attempt, response.status);
+            backoff(Math.max(retryAfterMillis, backoffMillis(attempt)));
+        }
+    }
+
+    /**
+     * @return endpoint of a path for the metrics, e.g., "/wiki" or "/bot/sendMessage": the path up to the wiki page,
+     * the API script or the pageviews metric, with the bot token of Telegram API paths left out
+     */
+    static String endpoint(String path) {
+        Matcher known = KNOWN_ENDPOINT.matcher(path);
+        if (known.find())
+            return known.group();
+        Matcher telegram = TELEGRAM_METHOD.matcher(path);
+        if (telegram.matches())
+            return telegram.group(1) + "/bot/" + telegram.group(2);
+        // unknown paths are cut to their first two segments, so that their number stays small
+        int end = 0;
+        for (int segment = 0; segment < 2 && end >= 0; segment++)
+            end = path.indexOf('/', end + 1);
+        return end < 0 ? path : path.substring(0, end);
+    }
+
+    /**
+     * @return url to log, with the bot token of Telegram API urls left out like in {@link #endpoint(String)}
+     */
+    static String redact(String url) {
+        return TELEGRAM_TOKEN.matcher(url).replaceFirst("/bot<token>/");
+    }
+
+    /**
+     * @return jittered exponential backoff before the next attempt: half of the backoff plus a random part of the other half
+     */
+    static long backoffMillis(int attempt) {
+        long backoff = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt - 1, 16));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * @return milliseconds of a Retry-After value in seconds or as an HTTP date, 0 if there is none
+     */
+    static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        if (retryAfter.trim().matches("\\d+")) {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        }
+        Date date = DateUtils.parseDate(retryAfter);
+        return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    private static void backoff(long millis) throws IOException {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private static Response cachedResponse(HttpCache.Entry cached) {
+        return new Response(HttpStatus.SC_OK, cached.body, null, cached.etag, cached.lastModified);
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private static Metrics.Counter cacheRequests(String result) {
+        return Metrics.counter("http_cache_requests_total", "Requests of cacheable resources by whether the cache had them", "result", result);
+    }
+
+    /** Metrics of the requests to an endpoint of a host */
+    private static class EndpointMetrics {
+        final String host;
+        final String endpoint;
+        final Metrics.Histogram latency;
+        final Metrics.Counter retries;
+        final Metrics.Counter throttled;
+        final Metrics.Counter rejected;
+        final Metrics.Counter errors;
+        /** by response status, the few statuses of an endpoint are looked up once */
+        final Map<Integer, Metrics.Counter> responses = new ConcurrentHashMap<>();
+
+        EndpointMetrics(String host, String endpoint) {
+            this.host = host;
+            this.endpoint = endpoint;
+            this.latency = Metrics.histogram("http_request_duration_seconds", "Time of an HTTP request attempt until its response is read", "host", host, "endpoint", endpoint);
+            this.retries = Metrics.counter("http_retries_total", "HTTP request attempts after the first one", "host", host, "endpoint", endpoint);
+            this.throttled = Metrics.counter("http_throttled_total", "HTTP responses 429 and 503", "host", host, "endpoint", endpoint);
+            this.rejected = Metrics.counter("http_circuit_rejected_total", "HTTP requests refused by an open circuit", "host", host, "endpoint", endpoint);
+            this.errors = requests("error");
+        }
+
+        Metrics.Counter requests(int status) {
+            Metrics.Counter counter = responses.get(status);
+            return counter != null ? counter : responses.computeIfAbsent(status, key -> requests(String.valueOf(key)));
+        }
+
+        private Metrics.Counter requests(String status) {
+            return Metrics.counter("http_requests_total", "HTTP request attempts by response status, error if there was no response", "host", host, "endpoint", endpoint, "status", status);
+        }
+    }
+
+    public static class Response {
+        public final int status;
+        public final String body;
+        /** Value of the Retry-After header, null if there is none */
+        public final String retryAfter;
+        final String etag;
+        final String lastModified;
+
+        Response(int status, String body, String retryAfter, String etag, String lastModified) {
+            this.status = status;
+            this.body = body;
+            this.retryAfter = retryAfter;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static CloseableHttpClient createHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(2_000);
+
+        RequestConfig requestConfig = RequestConfig.custom().
+                setConnectTimeout(CONNECT_TIMEOUT_MS).
+                setConnectionRequestTimeout(CONNECT_TIMEOUT_MS).
+                setSocketTimeout(READ_TIMEOUT_MS).
+                build();
+
+        log.debug("Create pooled http client with {} connections ({} per route)", MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE);
+        // content compression (gzip, deflate) is enabled by the builder unless explicitly disabled
+        return HttpClientBuilder.create().
+                setConnectionManager(connectionManager).
+                setDefaultRequestConfig(requestConfig).
+                setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, KEEP_ALIVE_MS) : KEEP_ALIVE_MS;
+                }).
+                evictExpiredConnections().
+                evictIdleConnections(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS).
+                setUserAgent(USER_AGENT).
+                disableCookieManagement().
+                build();
+    }
+
+    private static ExecutorService createAsyncExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(MAX_CONNECTIONS, runnable -> {
+            Thread thread = new Thread(runnable, "http-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void close() {
+        asyncExecutor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Could not close http client", e);
+        }
+    }
 }
@@ -0,0 +1,204 @@
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Links of catalog pages to the same page in other languages, so that the bot can send a page in the language of
+ * the day without asking Wikipedia at send time.
+ *
+ * The links are resolved by the export with langlinks queries of up to
+ * {@link WikiCatalogExport.WikiCatalog#MAX_TITLES_PER_QUERY} titles and kept in a file of lines "id|language|url".
+ * A page without a link in the language is kept with an empty url, so that it is not queried again.
+ */
+public class LangLinks {
+    private static final Logger log = LogManager.getLogger(LangLinks.class);
+
+    private static final String NO_LINK = "";
+
+    /** page id to language to url */
+    private final Map<String, Map<String, String>> links = new LinkedHashMap<>();
+
+    /**
+     * @return links of the file, no links if there is no file
+     */
+    public static LangLinks load(Path path) throws IOException {
+        LangLinks langLinks = new LangLinks();
+        if (!Files.exists(path)) {
+            log.info("No language links at {}", path);
+            return langLinks;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] tokens = StringUtils.splitPreserveAllTokens(line, '|');
+                if (tokens.length != 3) {
+                    log.warn("Skip malformed language link: {}", line);
+                    continue;
+                }
+                langLinks.put(tokens[0], tokens[1], tokens[2]);
+            }
+        }
+        log.info("Loaded language links of {} pages from {}", langLinks.links.size(), path);
+        return langLinks;
+    }
+
+    /**
+     * @return url of the page in the language, null if the page has no link in the language or it is not resolved
+     */
+    public String url(String id, String language) {
+        String url = links.getOrDefault(id, emptyLinks()).get(language);
+        return NO_LINK.equals(url) ? null : url;
+    }
+
+    public boolean isResolved(String id, String language) {
+        return links.getOrDefault(id, emptyLinks()).containsKey(language);
+    }
+
+    /**
+     * Drops the links of pages that are no longer in the catalog.
+     */
+    public void retain(Set<String> ids) {
+        links.keySet().retainAll(ids);
+    }
+
+    /**
+     * Resolves the links of the pages to the language with one query per {@link WikiCatalogExport.WikiCatalog#MAX_TITLES_PER_QUERY}
+     * pages. Pages of a query that fails stay unresolved, so that the next export queries them again.
+     */
+    public void resolve(String project, Collection<WikiCatalogExport.WikiPage> pages, String language) {
+        List<WikiCatalogExport.WikiPage> batch = new ArrayList<>();
+        for (WikiCatalogExport.WikiPage page : pages) {
+            batch.add(page);
+            if (batch.size() == WikiCatalogExport.WikiCatalog.MAX_TITLES_PER_QUERY) {
+                resolveBatch(project, batch, language);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            resolveBatch(project, batch, language);
+        }
+    }
+
+    private void resolveBatch(String project, List<WikiCatalogExport.WikiPage> pages, String language) {
+        List<String> titles = pages.stream().map(WikiCatalogExport.WikiPage::getTitle).collect(toList());
+        Map<String, String> urls;
+        try {
+            urls = queryLangLinks(project, titles, language);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not resolve language links to " + language + " of " + titles, e);
+            return;
+        }
+        for (WikiCatalogExport.WikiPage page : pages) {
+            put(page.getId(), language, urls.getOrDefault(page.getTitle(), NO_LINK));
+        }
+    }
+
+    /**
+     * Streams the links to a temporary file and swaps it with the links file.
+     */
+    public void write(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        int count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, UTF_8)) {
+            for (Map.Entry<String, Map<String, String>> page : links.entrySet()) {
+                for (Map.Entry<String, String> link : page.getValue().entrySet()) {
+                    writer.write(page.getKey() + '|' + link.getKey() + '|' + link.getValue());
+                    writer.newLine();
+                    count++;
+                }
+            }
+        }
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+        log.info("Wrote {} language links of {} pages to {}", count, links.size(), path);
+    }
+
+    private void put(String id, String language, String url) {
+        links.computeIfAbsent(id, i -> new LinkedHashMap<>()).put(language, url);
+    }
+
+    private static Map<String, String> emptyLinks() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Queries the links of the titles to the language, following continuations until all titles are covered.
+     *
+     * @return url in the language per title, titles without a link are left out
+     */
+    static Map<String, String> queryLangLinks(String project, List<String> titles, String language) throws IOException {
+        String url = WikiUrls.api(project, "action=query&prop=langlinks&llprop=url&lllimit=max&format=json") +
+                "&lllang=" + language + "&titles=" + URLEncoder.encode(String.join("|", titles), "UTF-8");
+        Map<String, String> urls = new HashMap<>();
+        String continuation = "";
+        do {
+            JSONObject response;
+            try {
+                response = (JSONObject) HttpUtils.getJSONResource(url + continuation);
+            } catch (ParseException e) {
+                throw new IOException("Could not parse language links of " + titles, e);
+            }
+            JSONObject query = (JSONObject) response.get("query");
+            Map<String, String> denormalized = new HashMap<>();
+            if (query != null && query.get("normalized") instanceof JSONArray) {
+                for (Object normalized : (JSONArray) query.get("normalized")) {
+                    denormalized.put((String) ((JSONObject) normalized).get("to"), (String) ((JSONObject) normalized).get("from"));
+                }
+            }
+            if (query != null && query.get("pages") instanceof JSONObject) {
+                for (Object pageObject : ((JSONObject) query.get("pages")).values()) {
+                    JSONObject page = (JSONObject) pageObject;
+                    if (!(page.get("langlinks") instanceof JSONArray)) {
+                        continue;
+                    }
+                    for (Object linkObject : (JSONArray) page.get("langlinks")) {
+                        JSONObject link = (JSONObject) linkObject;
+                        if (language.equals(link.get("lang")) && link.get("url") instanceof String) {
+                            String title = (String) page.get("title");
+                            urls.put(denormalized.getOrDefault(title, title), (String) link.get("url"));
+                        }
+                    }
+                }
+            }
+            continuation = continuation(response.get("continue"));
+        } while (!continuation.isEmpty());
+        return urls;
+    }
+
+    /**
+     * @return query parameters that continue the query, e.g., "&amp;llcontinue=123|fr&amp;continue=||", empty if it is complete
+     */
+    private static String continuation(Object continueObject) throws IOException {
+        if (!(continueObject instanceof JSONObject)) {
+            return "";
+        }
+        StringBuilder parameters = new StringBuilder();
+        for (Object entryObject : ((JSONObject) continueObject).entrySet()) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObject;
+            parameters.append('&').append(entry.getKey()).append('=').append(URLEncoder.encode(String.valueOf(entry.getValue()), "UTF-8"));
+        }
+        return parameters.toString();
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs, so that large sets of ids and hashes do not box every element.
+ * Not thread-safe.
+ */
+public class LongHashSet {
+    /** Marks free slots, the zero value itself is tracked by {@link #containsZero} */
+    private static final long EMPTY = 0;
+
+    private long[] slots;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        slots = new long[tableSizeFor(Math.max(expectedSize, 8))];
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+        if ((size + 1) * 4L > slots.length * 3L) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == EMPTY) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+            if (slots[i] == value) {
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == EMPTY) {
+                return false;
+            }
+            if (slots[i] == value) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsZero = false;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldSlots = slots;
+        slots = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : oldSlots) {
+            if (value != EMPTY) {
+                int i = mix(value) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        return Math.max(Integer.highestOneBit(expectedSize * 4 / 3 + 1) << 1, 16);
+    }
+}
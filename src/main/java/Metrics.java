@@ -0,0 +1,362 @@
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import static java.lang.System.getProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Counters, latency histograms and gauges of the exporter and the bot.
+ *
+ * Recording only adds to {@link LongAdder}s, so threads that record the same metric do not contend. A metric is
+ * looked up by its name and labels, given as name-value pairs; hot paths keep the metric they record rather than
+ * looking it up every time. Histograms count observations in fixed buckets from 1 ms to 60 s.
+ *
+ * Every metric is registered as an MBean "wikiaday:name=&lt;metric&gt;,&lt;label&gt;=&lt;value&gt;..." and all metrics are
+ * exported in the Prometheus text format.
+ *
+ * Configuration with VM properties:
+ *   * METRICS_FILE: file the metrics are written to every METRICS_INTERVAL_SECONDS and on exit, e.g., for the
+ *     textfile collector of the node exporter; no file by default
+ *   * METRICS_INTERVAL_SECONDS: interval of writing the metrics file, 15 by default
+ *   * METRICS_PORT: port of an HTTP endpoint /metrics to scrape; no endpoint by default
+ */
+public final class Metrics {
+    private static final Logger log = LogManager.getLogger(Metrics.class);
+
+    private static final String DOMAIN = "wikiaday";
+    private static final double[] BUCKET_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final ConcurrentMap<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    static {
+        String file = getProperty("METRICS_FILE");
+        if (file != null && !file.isEmpty()) {
+            exportToFile(Paths.get(file), Integer.getInteger("METRICS_INTERVAL_SECONDS", 15));
+        }
+        Integer port = Integer.getInteger("METRICS_PORT");
+        if (port != null) {
+            exportToEndpoint(port);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels label names and values, e.g., "host", "en.wikipedia.org"
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").metrics.computeIfAbsent(labelText(labels),
+                text -> register(name, labels, new Counter(), CounterMBean.class));
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").metrics.computeIfAbsent(labelText(labels),
+                text -> register(name, labels, new Histogram(), HistogramMBean.class));
+    }
+
+    /**
+     * Registers a gauge whose value is read when the metrics are exported, a gauge that is already registered is kept.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.computeIfAbsent(labelText(labels),
+                text -> register(name, labels, new Gauge(value), GaugeMBean.class));
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : new TreeMap<>(FAMILIES).values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> metric : new TreeMap<>(family.metrics).entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof Counter) {
+                    sample(out, family.name, labels, ((Counter) value).getCount());
+                } else if (value instanceof Gauge) {
+                    sample(out, family.name, labels, ((Gauge) value).getValue());
+                } else {
+                    Histogram histogram = (Histogram) value;
+                    long cumulative = 0;
+                    for (int i = 0; i <= BUCKET_SECONDS.length; i++) {
+                        cumulative += histogram.buckets[i].sum();
+                        String le = "le=\"" + (i < BUCKET_SECONDS.length ? String.valueOf(BUCKET_SECONDS[i]) : "+Inf") + '"';
+                        sample(out, family.name + "_bucket", labels.isEmpty() ? le : labels + ',' + le, cumulative);
+                    }
+                    sample(out, family.name + "_sum", labels, histogram.getSumSeconds());
+                    sample(out, family.name + "_count", labels, cumulative);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the metrics to a temporary file and swaps it with the file, so a collector never reads a partial file.
+     */
+    public static void writeFile(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, UTF_8)) {
+            writer.write(scrape());
+        }
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static void exportToFile(Path path, int intervalSeconds) {
+        Runnable write = () -> {
+            try {
+                writeFile(path);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not write metrics to {}: {}", path, e.toString());
+            }
+        };
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        // the metrics of the whole run of the exporter and the sender
+        Runtime.getRuntime().addShutdownHook(new Thread(write, "metrics-shutdown"));
+        log.info("Write metrics to {} every {} s", path, intervalSeconds);
+    }
+
+    private static void exportToEndpoint(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            log.info("Serve metrics on port {}", port);
+        } catch (IOException e) {
+            log.warn("Could not serve metrics on port {}: {}", port, e.toString());
+        }
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    private static <T, M extends T> M register(String name, String[] labels, M metric, Class<T> mbeanInterface) {
+        try {
+            StringBuilder objectName = new StringBuilder(DOMAIN).append(":name=").append(name);
+            for (int i = 0; i < labels.length; i += 2) {
+                objectName.append(',').append(labels[i]).append('=').append(ObjectName.quote(labels[i + 1]));
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(metric, mbeanInterface), new ObjectName(objectName.toString()));
+        } catch (JMException e) {
+            log.warn("Could not register MBean of metric {}: {}", name, e.toString());
+        }
+        return metric;
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels are not name-value pairs: " + String.join(",", labels));
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return text.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        /** metric per label text */
+        final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public interface CounterMBean {
+        long getCount();
+    }
+
+    public interface HistogramMBean {
+        long getCount();
+
+        double getSumSeconds();
+
+        double getP50Seconds();
+
+        double getP99Seconds();
+    }
+
+    public interface GaugeMBean {
+        double getValue();
+    }
+
+    public static class Counter implements CounterMBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    public static class Histogram implements HistogramMBean {
+        private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+        static {
+            for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+                BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+
+        /** observations per bucket, the last bucket is above the largest bound */
+        private final LongAdder[] buckets = new LongAdder[BUCKET_SECONDS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observeNanos(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * Observes the time since the start, a value of {@link System#nanoTime()}.
+         */
+        public void observeSince(long startNanos) {
+            observeNanos(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        @Override
+        public double getSumSeconds() {
+            return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+        }
+
+        @Override
+        public double getP50Seconds() {
+            return quantile(0.5);
+        }
+
+        @Override
+        public double getP99Seconds() {
+            return quantile(0.99);
+        }
+
+        /**
+         * @return upper bound of the bucket of the quantile, infinity if it is above the largest bound and 0 if there
+         * are no observations
+         */
+        public double quantile(double quantile) {
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+                cumulative += buckets[i].sum();
+                if (cumulative >= rank) {
+                    return BUCKET_SECONDS[i];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    public static class Gauge implements GaugeMBean {
+        private final DoubleSupplier value;
+
+        Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public double getValue() {
+            return value.getAsDouble();
+        }
+    }
+}
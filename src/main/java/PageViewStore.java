@@ -0,0 +1,163 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Daily views of pages, so that the views of a window of days are summed up locally and only the days that are
+ * missing since the previous run are fetched.
+ *
+ * Every page has a dense column of daily counts from its first stored day to the last day of a response; days
+ * without views are 0. Days before the retained window are dropped when a page is updated.
+ *
+ * Layout (big-endian): magic, number of pages, then per page its id (modified UTF-8), the epoch day of the first
+ * count, the number of counts and the counts.
+ */
+public class PageViewStore {
+    private static final Logger log = LogManager.getLogger(PageViewStore.class);
+
+    private static final int MAGIC = 0x50565331; // PVS1
+
+    private final Map<String, DailyViews> pages = new ConcurrentHashMap<>();
+
+    /**
+     * @return views of the file, no views if there is no file
+     */
+    public static PageViewStore load(Path path) throws IOException {
+        PageViewStore store = new PageViewStore();
+        if (!Files.exists(path)) {
+            log.info("No page views at {}", path);
+            return store;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a page view store: " + path);
+            }
+            int pageCount = in.readInt();
+            for (int i = 0; i < pageCount; i++) {
+                String id = in.readUTF();
+                int firstDay = in.readInt();
+                int[] counts = new int[in.readInt()];
+                for (int day = 0; day < counts.length; day++) {
+                    counts[day] = in.readInt();
+                }
+                store.pages.put(id, new DailyViews(firstDay, counts));
+            }
+        }
+        log.info("Loaded daily views of {} pages from {}", store.pages.size(), path);
+        return store;
+    }
+
+    /**
+     * Streams the views to a temporary file and swaps it with the store file.
+     */
+    public void write(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        Map<String, DailyViews> snapshot = new HashMap<>(pages);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, DailyViews> page : snapshot.entrySet()) {
+                out.writeUTF(page.getKey());
+                out.writeInt(page.getValue().firstDay);
+                out.writeInt(page.getValue().counts.length);
+                for (int count : page.getValue().counts) {
+                    out.writeInt(count);
+                }
+            }
+        }
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+        log.info("Wrote daily views of {} pages to {}", snapshot.size(), path);
+    }
+
+    /**
+     * @return last day with known views of the page, null if there is none
+     */
+    public LocalDate lastDay(String pageId) {
+        DailyViews views = pages.get(pageId);
+        return views == null || views.counts.length == 0 ? null : LocalDate.ofEpochDay(views.firstDay + views.counts.length - 1);
+    }
+
+    /**
+     * @return sum of the views of the page from and to the days inclusive, days that are not stored count as 0
+     */
+    public long views(String pageId, LocalDate from, LocalDate to) {
+        DailyViews views = pages.get(pageId);
+        if (views == null) {
+            return 0;
+        }
+        int start = (int) Math.max(from.toEpochDay() - views.firstDay, 0);
+        int end = (int) Math.min(to.toEpochDay() - views.firstDay, views.counts.length - 1);
+        long sum = 0;
+        for (int day = start; day <= end; day++) {
+            sum += views.counts[day];
+        }
+        return sum;
+    }
+
+    /**
+     * Stores the views of the page from the day up to the last day of the views, days in between without views are
+     * stored as 0. Later days are left out, they may not be counted yet and are requested again.
+     *
+     * @param days     epoch days of the views
+     * @param views    views of the days
+     * @param keepFrom days before it are dropped
+     */
+    public void update(String pageId, LocalDate from, int[] days, int[] views, int count, LocalDate keepFrom) {
+        int to = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            to = Math.max(to, days[i]);
+        }
+        if (to < from.toEpochDay()) {
+            return;
+        }
+        int lastFetchedDay = to;
+        pages.compute(pageId, (id, previous) -> {
+            int firstDay = (int) Math.max(keepFrom.toEpochDay(), previous == null ? from.toEpochDay() : Math.min(previous.firstDay, from.toEpochDay()));
+            int lastDay = Math.max(lastFetchedDay, previous == null ? lastFetchedDay : previous.firstDay + previous.counts.length - 1);
+            int[] counts = new int[Math.max(lastDay - firstDay + 1, 0)];
+            if (previous != null) {
+                for (int day = Math.max(previous.firstDay, firstDay); day < previous.firstDay + previous.counts.length; day++) {
+                    counts[day - firstDay] = previous.counts[day - previous.firstDay];
+                }
+            }
+            for (int day = (int) Math.max(from.toEpochDay(), firstDay); day <= lastFetchedDay; day++) {
+                counts[day - firstDay] = 0;
+            }
+            for (int i = 0; i < count; i++) {
+                if (days[i] >= firstDay && days[i] <= lastDay) {
+                    counts[days[i] - firstDay] = views[i];
+                }
+            }
+            return new DailyViews(firstDay, counts);
+        });
+    }
+
+    public int size() {
+        return pages.size();
+    }
+
+    private static class DailyViews {
+        final int firstDay;
+        final int[] counts;
+
+        DailyViews(int firstDay, int[] counts) {
+            this.firstDay = firstDay;
+            this.counts = counts;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compiled, read-only catalog with the pages of every category already ranked by {@link WikiCatalogExport.WikiPage#RANKING}.
+ * The file is memory-mapped and pages are decoded lazily, so picking the top pages does not parse the whole catalog.
+ *
+ * Layout (big-endian):
+ *   * header: magic, version, number of categories, number of pages, offset and size of the string pool
+ *   * categories: name, index of the first page, number of pages
+ *   * pages: project, category, url, id, title, views, updated (epoch day or -1)
+ *   * string pool: every distinct string once as length and UTF-8 bytes; strings are referenced by their pool offset
+ */
+public class RankedCatalog {
+    private static final Logger log = LogManager.getLogger(RankedCatalog.class);
+
+    private static final int MAGIC = 0x57524331; // WRC1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+    private static final int CATEGORY_SIZE = 3 * Integer.BYTES;
+    private static final int PAGE_SIZE = 7 * Integer.BYTES;
+    private static final int NO_DATE = -1;
+
+    private final ByteBuffer buffer;
+    private final int pagesOffset;
+    private final int stringPoolOffset;
+    /** category to its first page and number of pages */
+    private final Map<String, int[]> categories = new LinkedHashMap<>();
+
+    private RankedCatalog(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a ranked catalog of version " + VERSION);
+        }
+        int categoryCount = buffer.getInt(8);
+        this.pagesOffset = HEADER_SIZE + categoryCount * CATEGORY_SIZE;
+        this.stringPoolOffset = buffer.getInt(16);
+        for (int i = 0; i < categoryCount; i++) {
+            int offset = HEADER_SIZE + i * CATEGORY_SIZE;
+            categories.put(string(buffer.getInt(offset)), new int[]{buffer.getInt(offset + 4), buffer.getInt(offset + 8)});
+        }
+    }
+
+    /**
+     * Memory-maps a compiled catalog.
+     */
+    public static RankedCatalog open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            return new RankedCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Ranks the pages in memory.
+     */
+    public static RankedCatalog of(List<WikiCatalogExport.WikiPage> pages) {
+        return new RankedCatalog(ByteBuffer.wrap(compile(pages)));
+    }
+
+    /**
+     * Opens the compiled catalog if it is not older than the CSV export, otherwise ranks the CSV export in memory.
+     */
+    public static RankedCatalog load(Path csvPath, Path compiledPath) throws IOException {
+        if (Files.exists(compiledPath) && (!Files.exists(csvPath) ||
+                Files.getLastModifiedTime(compiledPath).compareTo(Files.getLastModifiedTime(csvPath)) >= 0)) {
+            log.info("Open ranked catalog {}", compiledPath);
+            long start = System.nanoTime();
+            RankedCatalog catalog = open(compiledPath);
+            loadLatency("compiled").observeSince(start);
+            return catalog;
+        }
+        log.info("Rank catalog {}", csvPath);
+        long start = System.nanoTime();
+        RankedCatalog catalog = of(WikiCatalogExport.WikiCatalog.readFromFile(csvPath));
+        loadLatency("csv").observeSince(start);
+        return catalog;
+    }
+
+    private static Metrics.Histogram loadLatency(String source) {
+        return Metrics.histogram("catalog_load_duration_seconds", "Time of loading the ranked catalog from the compiled file or the export", "source", source);
+    }
+
+    public static void write(Path path, List<WikiCatalogExport.WikiPage> pages) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempPath)) {
+            out.write(compile(pages));
+        }
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+        log.info("Wrote ranked catalog of {} pages to {}", pages.size(), path);
+    }
+
+    public Set<String> categories() {
+        return Collections.unmodifiableSet(categories.keySet());
+    }
+
+    public int size(String category) {
+        int[] range = categories.get(category);
+        return range == null ? 0 : range[1];
+    }
+
+    /**
+     * @return id of the page at the rank within the category, without decoding the rest of the page
+     */
+    public String id(String category, int rank) {
+        return string(buffer.getInt(pageOffset(category, rank) + 3 * Integer.BYTES));
+    }
+
+    public WikiCatalogExport.WikiPage get(String category, int rank) {
+        int offset = pageOffset(category, rank);
+        int updated = buffer.getInt(offset + 6 * Integer.BYTES);
+        return WikiCatalogExport.WikiPage.builder().
+                project(string(buffer.getInt(offset))).
+                category(string(buffer.getInt(offset + Integer.BYTES))).
+                url(string(buffer.getInt(offset + 2 * Integer.BYTES))).
+                id(string(buffer.getInt(offset + 3 * Integer.BYTES))).
+                title(string(buffer.getInt(offset + 4 * Integer.BYTES))).
+                views(buffer.getInt(offset + 5 * Integer.BYTES)).
+                updated(updated == NO_DATE ? null : LocalDate.ofEpochDay(updated)).
+                build();
+    }
+
+    private int pageOffset(String category, int rank) {
+        int[] range = categories.get(category);
+        if (range == null || rank < 0 || rank >= range[1]) {
+            throw new IndexOutOfBoundsException("No page of rank " + rank + " in category: " + category);
+        }
+        return pagesOffset + (range[0] + rank) * PAGE_SIZE;
+    }
+
+    private String string(int reference) {
+        int offset = stringPoolOffset + reference;
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + Integer.BYTES);
+        view.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] compile(List<WikiCatalogExport.WikiPage> pages) {
+        Map<String, List<WikiCatalogExport.WikiPage>> rankedPages = pages.stream().
+                collect(groupingBy(WikiCatalogExport.WikiPage::getCategory, LinkedHashMap::new, toList()));
+        rankedPages.values().forEach(categoryPages -> categoryPages.sort(WikiCatalogExport.WikiPage.RANKING));
+
+        StringPool strings = new StringPool();
+        ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + rankedPages.size() * CATEGORY_SIZE + pages.size() * PAGE_SIZE);
+        index.position(HEADER_SIZE);
+        int firstPage = 0;
+        for (Map.Entry<String, List<WikiCatalogExport.WikiPage>> category : rankedPages.entrySet()) {
+            index.putInt(strings.reference(category.getKey())).putInt(firstPage).putInt(category.getValue().size());
+            firstPage += category.getValue().size();
+        }
+        for (List<WikiCatalogExport.WikiPage> categoryPages : rankedPages.values()) {
+            for (WikiCatalogExport.WikiPage page : categoryPages) {
+                index.putInt(strings.reference(page.getProject())).
+                        putInt(strings.reference(page.getCategory())).
+                        putInt(strings.reference(page.getUrl())).
+                        putInt(strings.reference(page.getId())).
+                        putInt(strings.reference(page.getTitle())).
+                        putInt(page.getViews()).
+                        putInt(page.getUpdated() == null ? NO_DATE : (int) page.getUpdated().toEpochDay());
+            }
+        }
+        index.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, rankedPages.size()).putInt(12, pages.size()).
+                putInt(16, index.capacity()).putInt(20, strings.size());
+
+        ByteBuffer catalog = ByteBuffer.allocate(index.capacity() + strings.size());
+        index.flip();
+        catalog.put(index);
+        strings.writeTo(catalog);
+        return catalog.array();
+    }
+
+    private static class StringPool {
+        private final Map<String, Integer> references = new LinkedHashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int size;
+
+        int reference(String value) {
+            return references.computeIfAbsent(value, v -> {
+                byte[] bytes = v.getBytes(UTF_8);
+                int reference = size;
+                strings.add(bytes);
+                size += Integer.BYTES + bytes.length;
+                return reference;
+            });
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            for (byte[] bytes : strings) {
+                buffer.putInt(bytes.length).put(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.getProperty;
+
+/**
+ * Token bucket that adapts its rate to what the server tolerates.
+ *
+ * Every successful request raises the rate additively, so that a busy limiter climbs from 0 to its maximum rate in
+ * about {@link #RAMP_UP_SECONDS} seconds. A throttled request (429, 503) halves the rate, at most once per second so
+ * that the requests that were already in flight do not halve it again, and hands out no permits for the Retry-After
+ * time.
+ *
+ * Every host gets its own limiter, configured with the VM properties RATE_LIMIT_&lt;host&gt; (initial requests per
+ * second) and RATE_LIMIT_MAX_&lt;host&gt; (maximum requests per second, the initial rate by default, so a limiter
+ * only ramps up if its maximum is configured):
+ *   * -DRATE_LIMIT_en.wikipedia.org=20
+ *   * -DRATE_LIMIT_wikimedia.org=50 -DRATE_LIMIT_MAX_wikimedia.org=100
+ * Hosts with a documented limit are never asked for more, whatever is configured: api.telegram.org takes 30 messages
+ * per second of a bot.
+ */
+public class RateLimiter {
+    private static final Logger log = LogManager.getLogger(RateLimiter.class);
+
+    private static final double DEFAULT_RATE = 10;
+    private static final Map<String, Double> DEFAULT_HOST_RATES = new HashMap<>();
+    private static final Map<String, Double> HOST_RATE_LIMITS = new HashMap<>();
+    private static final ConcurrentMap<String, RateLimiter> HOST_LIMITERS = new ConcurrentHashMap<>();
+
+    private static final double MIN_RATE = 0.2;
+    /** Permits that can be handed out at once after an idle period, in seconds of the rate */
+    private static final double BURST_SECONDS = 0.25;
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double RAMP_UP_SECONDS = 20;
+
+    static {
+        DEFAULT_HOST_RATES.put("en.wikipedia.org", 20.0);
+        DEFAULT_HOST_RATES.put("wikimedia.org", 50.0);
+        DEFAULT_HOST_RATES.put("api.telegram.org", 30.0);
+        HOST_RATE_LIMITS.put("api.telegram.org", 30.0);
+    }
+
+    private final String name;
+    private final double maxRate;
+    private double rate;
+    /** Negative when permits are handed out ahead of the rate, the waiters then queue up behind each other */
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = lastRefill;
+    private long lastDecrease = lastRefill - DECREASE_INTERVAL_NANOS;
+
+    public RateLimiter(double permitsPerSecond) {
+        this("rate limiter", permitsPerSecond, permitsPerSecond);
+    }
+
+    public RateLimiter(String name, double permitsPerSecond, double maxPermitsPerSecond) {
+        if (permitsPerSecond <= 0 || maxPermitsPerSecond < permitsPerSecond) {
+            throw new IllegalArgumentException("Rate must be positive and not above the maximum rate: " + permitsPerSecond + ", " + maxPermitsPerSecond);
+        }
+        this.name = name;
+        this.rate = permitsPerSecond;
+        this.maxRate = maxPermitsPerSecond;
+        this.tokens = burst();
+    }
+
+    public static RateLimiter forHost(String host) {
+        return HOST_LIMITERS.computeIfAbsent(host, h -> {
+            double limit = HOST_RATE_LIMITS.getOrDefault(h, Double.MAX_VALUE);
+            double rate = Math.min(limit, Double.parseDouble(getProperty("RATE_LIMIT_" + h, String.valueOf(DEFAULT_HOST_RATES.getOrDefault(h, DEFAULT_RATE)))));
+            double maxRate = Math.min(limit, Double.parseDouble(getProperty("RATE_LIMIT_MAX_" + h, String.valueOf(rate))));
+            log.info("Limit requests to host '{}' to {} per second, at most {} per second", h, rate, maxRate);
+            RateLimiter limiter = new RateLimiter(h, rate, maxRate);
+            Metrics.gauge("http_rate_limit_per_second", "Current adaptive rate limit of a host", limiter::rate, "host", h);
+            return limiter;
+        });
+    }
+
+    /**
+     * Hands out no permits for the given time, e.g., when the server asks to retry after it.
+     */
+    public synchronized void pause(long millis) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Raises the rate after a request that the server accepted.
+     */
+    public synchronized void onSuccess() {
+        // at the current rate there are as many successes per second
+        rate = Math.min(maxRate, rate + maxRate / RAMP_UP_SECONDS / rate);
+    }
+
+    /**
+     * Halves the rate and pauses after a request that the server throttled.
+     *
+     * @param retryAfterMillis time the server asked to wait, 0 if it did not say
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        long now = System.nanoTime();
+        if (now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+            refill(now);
+            rate = Math.max(MIN_RATE, rate / 2);
+            lastDecrease = now;
+            log.warn("Throttled by '{}', reduce the rate to {} per second", name, String.format("%.1f", rate));
+        }
+        pause(retryAfterMillis);
+    }
+
+    public synchronized double rate() {
+        return rate;
+    }
+
+    /**
+     * Blocks until the next permit is available.
+     */
+    public void acquire() {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            tokens--;
+            long tokenNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+            waitNanos = Math.max(tokenNanos, pausedUntil - now);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a rate limit permit", e);
+            }
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst(), tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    private double burst() {
+        return Math.max(1, rate * BURST_SECONDS);
+    }
+}
@@ -0,0 +1,124 @@
+import lombok.Data;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects the page of the day of every subscriber: the highest ranked page of the category of its language of the
+ * day that it has not been sent yet.
+ *
+ * Subscribers with the same language of the day and the same sent pages (see {@link SentHistory#signature}) get
+ * the same page, so the ranking is walked once per such group rather than once per subscriber. The walk starts at
+ * the top every time: the signature of a group changes with every page it is sent, so a cursor kept per group would
+ * never be found again, and the walk is one hash lookup per page the group has been sent.
+ */
+public class SelectionEngine {
+    private static final Logger log = LogManager.getLogger(SelectionEngine.class);
+    private static final Metrics.Histogram selectLatency = Metrics.histogram("selection_duration_seconds", "Time of selecting the pages of the day of all subscribers");
+    private static final Metrics.Counter selectedSubscribers = Metrics.counter("selection_subscribers_total", "Subscribers that were selected a page");
+    private static final Metrics.Counter selectionGroups = Metrics.counter("selection_groups_total", "Groups of subscribers that share a selection");
+    private static final Metrics.Counter exhaustedGroups = Metrics.counter("selection_exhausted_groups_total", "Groups of subscribers that have been sent every page of their category");
+
+    private final RankedCatalog catalog;
+    private final SentHistory history;
+    private final Map<String, String> categories;
+
+    /**
+     * @param categories category per language
+     */
+    public SelectionEngine(RankedCatalog catalog, SentHistory history, Map<String, String> categories) {
+        this.catalog = catalog;
+        this.history = history;
+        this.categories = categories;
+    }
+
+    /**
+     * Subscribers rotate through their languages, one a day.
+     *
+     * @return language of the day, null if the subscriber has no languages
+     */
+    public static String languageOfDay(TelegramWikiBot.TelegramUser user, LocalDate date) {
+        List<String> languages = user.getLanguages();
+        if (languages == null || languages.isEmpty())
+            return null;
+        return languages.get(date.getDayOfMonth() % languages.size());
+    }
+
+    /**
+     * @return selection per chat id, subscribers that have been sent every page of their category are left out
+     */
+    public Map<Long, Selection> select(LocalDate date, Collection<TelegramWikiBot.TelegramUser> subscribers) {
+        long start = System.nanoTime();
+        Map<GroupKey, List<Long>> groups = new LinkedHashMap<>();
+        for (TelegramWikiBot.TelegramUser user : subscribers) {
+            String language = languageOfDay(user, date);
+            if (language == null) {
+                log.warn("Subscriber {} has no languages", user.getId());
+                continue;
+            }
+            if (!categories.containsKey(language)) {
+                log.warn("Subscriber {} has unknown language {}", user.getId(), language);
+                continue;
+            }
+            GroupKey group = new GroupKey(language, history.signature(String.valueOf(user.getId())));
+            groups.computeIfAbsent(group, g -> new ArrayList<>()).add(user.getId());
+        }
+
+        Map<Long, Selection> selections = new HashMap<>();
+        for (Map.Entry<GroupKey, List<Long>> group : groups.entrySet()) {
+            String language = group.getKey().getLanguage();
+            String category = categories.get(language);
+            int rank = nextRank(category, String.valueOf(group.getValue().get(0)));
+            if (rank == catalog.size(category)) {
+                exhaustedGroups.increment();
+                log.warn("All pages of {} have been sent to {} subscribers", category, group.getValue().size());
+                continue;
+            }
+            Selection selection = new Selection(language, category, rank, catalog.get(category, rank));
+            for (Long chatId : group.getValue()) {
+                selections.put(chatId, selection);
+            }
+        }
+        selectLatency.observeSince(start);
+        selectedSubscribers.add(selections.size());
+        selectionGroups.add(groups.size());
+        log.info("Selected pages for {} of {} subscribers in {} groups within {} ms", selections.size(), subscribers.size(),
+                groups.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return selections;
+    }
+
+    /**
+     * @param recipient any subscriber of the group, they all have been sent the same pages
+     * @return rank of the highest page not yet sent to the group, the size of the category if there is none
+     */
+    private int nextRank(String category, String recipient) {
+        int size = catalog.size(category);
+        int rank = 0;
+        while (rank < size && history.isSent(recipient, category, catalog.id(category, rank))) {
+            rank++;
+        }
+        return rank;
+    }
+
+    @Data
+    private static class GroupKey {
+        private final String language;
+        private final long signature;
+    }
+
+    @Data
+    public static class Selection {
+        private final String language;
+        private final String category;
+        private final int rank;
+        private final WikiCatalogExport.WikiPage page;
+    }
+}
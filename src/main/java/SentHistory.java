@@ -0,0 +1,246 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.apache.commons.lang3.StringUtils.split;
+
+/**
+ * Append-only history of the pages sent to recipients.
+ *
+ * The history is a log of lines "timestamp|recipient|category|page-id|url" and an index file next to it
+ * ("&lt;log&gt;.idx") with a 64-bit hash of the recipient and a 64-bit hash of (category, page-id) per line. On
+ * startup only the index is memory-mapped and loaded into a primitive hash set, so "already sent?" is a constant-time
+ * lookup whatever the size of the history. The index is rebuilt from the log if it does not cover the whole log,
+ * e.g., after a crash.
+ *
+ * Every recipient also has a signature of its sent pages, the XOR of their hashes: recipients with the same
+ * signature have been sent the same pages, which lets {@link SelectionEngine} select for all of them at once.
+ *
+ * Records of {@link #ALL_RECIPIENTS} and {@link #ALL_CATEGORIES} apply to every recipient and category, the
+ * messages of the original bot.msg format are imported as such.
+ */
+public class SentHistory implements Closeable {
+    private static final Logger log = LogManager.getLogger(SentHistory.class);
+
+    public static final String ALL_RECIPIENTS = "*";
+    public static final String ALL_CATEGORIES = "*";
+
+    private static final int INDEX_MAGIC = 0x53484932; // SHI2
+    /** magic, reserved, length of the log covered by the index */
+    private static final int INDEX_HEADER_SIZE = 16;
+    /** recipient hash, page hash */
+    private static final int INDEX_RECORD_SIZE = 2 * Long.BYTES;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long ALL_RECIPIENTS_KEY = recipientKey(ALL_RECIPIENTS);
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final LongHashSet sentKeys = new LongHashSet(1024);
+    private final Map<Long, Long> signatures = new HashMap<>();
+    private FileChannel logChannel;
+    private FileChannel indexChannel;
+
+    private SentHistory(Path logPath) {
+        this.logPath = logPath;
+        this.indexPath = Paths.get(logPath + ".idx");
+    }
+
+    /**
+     * Opens the history, the legacy messages file is imported if the history does not exist yet.
+     */
+    public static SentHistory open(Path logPath, Path legacyMessagesPath) throws IOException {
+        SentHistory history = new SentHistory(logPath);
+        boolean importLegacy = !Files.exists(logPath) && legacyMessagesPath != null && Files.exists(legacyMessagesPath);
+        history.load();
+        if (importLegacy) {
+            history.importLegacyMessages(legacyMessagesPath);
+        }
+        return history;
+    }
+
+    public synchronized boolean isSent(String recipient, String category, String pageId) {
+        long recipientKey = recipientKey(recipient);
+        long pageKey = pageKey(category, pageId);
+        long anyCategoryPageKey = pageKey(ALL_CATEGORIES, pageId);
+        return sentKeys.contains(key(recipientKey, pageKey)) ||
+                sentKeys.contains(key(recipientKey, anyCategoryPageKey)) ||
+                sentKeys.contains(key(ALL_RECIPIENTS_KEY, pageKey)) ||
+                sentKeys.contains(key(ALL_RECIPIENTS_KEY, anyCategoryPageKey));
+    }
+
+    /**
+     * @return signature of the pages sent to the recipient itself, 0 if none; records of {@link #ALL_RECIPIENTS} are
+     * the same for every recipient and are left out
+     */
+    public synchronized long signature(String recipient) {
+        return signatures.getOrDefault(recipientKey(recipient), 0L);
+    }
+
+    public void append(String recipient, String category, String pageId, String url) throws IOException {
+        append(LocalDateTime.now().toString(), recipient, category, pageId, url);
+    }
+
+    private void append(String timestamp, String recipient, String category, String pageId, String url) throws IOException {
+        append(timestamp, Collections.singletonList(recipient), category, pageId, url);
+    }
+
+    /**
+     * Records the page as sent to all the recipients with one write to the log and one to the index.
+     */
+    public void append(Collection<String> recipients, String category, String pageId, String url) throws IOException {
+        append(LocalDateTime.now().toString(), recipients, category, pageId, url);
+    }
+
+    private synchronized void append(String timestamp, Collection<String> recipients, String category, String pageId, String url) throws IOException {
+        if (recipients.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        ByteBuffer keys = ByteBuffer.allocate(recipients.size() * INDEX_RECORD_SIZE);
+        long pageKey = pageKey(category, pageId);
+        for (String recipient : recipients) {
+            lines.append(timestamp).append('|').append(recipient).append('|').append(category).append('|').
+                    append(pageId).append('|').append(url).append('\n');
+            keys.putLong(recipientKey(recipient)).putLong(pageKey);
+        }
+        logChannel.write(ByteBuffer.wrap(lines.toString().getBytes(UTF_8)));
+        keys.flip();
+        indexChannel.write(keys, indexChannel.size());
+        writeIndexHeader(logChannel.size());
+        for (String recipient : recipients) {
+            add(recipientKey(recipient), pageKey);
+        }
+    }
+
+    public synchronized int size() {
+        return sentKeys.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        logChannel.close();
+        indexChannel.close();
+    }
+
+    private void load() throws IOException {
+        logChannel = FileChannel.open(logPath, CREATE, WRITE, APPEND);
+        long logLength = logChannel.size();
+        if (Files.exists(indexPath) && Files.size(indexPath) >= INDEX_HEADER_SIZE) {
+            indexChannel = FileChannel.open(indexPath, READ, WRITE);
+            MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            if (index.getInt(0) == INDEX_MAGIC && index.getLong(8) == logLength) {
+                index.position(INDEX_HEADER_SIZE);
+                LongBuffer keys = index.asLongBuffer();
+                while (keys.remaining() >= 2) {
+                    add(keys.get(), keys.get());
+                }
+                log.info("Loaded {} sent pages from {}", sentKeys.size(), indexPath);
+                return;
+            }
+            indexChannel.close();
+        }
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() throws IOException {
+        log.info("Rebuild index {} of sent history {}", indexPath, logPath);
+        indexChannel = FileChannel.open(indexPath, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+        ByteBuffer keys = ByteBuffer.allocate(8192);
+        long position = INDEX_HEADER_SIZE;
+        try (BufferedReader reader = Files.newBufferedReader(logPath, UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] tokens = split(line, '|');
+                if (tokens.length < 4) {
+                    log.warn("Skip malformed sent history record: {}", line);
+                    continue;
+                }
+                long recipientKey = recipientKey(tokens[1]);
+                long pageKey = pageKey(tokens[2], tokens[3]);
+                add(recipientKey, pageKey);
+                if (!keys.hasRemaining()) {
+                    keys.flip();
+                    position += indexChannel.write(keys, position);
+                    keys.clear();
+                }
+                keys.putLong(recipientKey).putLong(pageKey);
+            }
+        }
+        keys.flip();
+        indexChannel.write(keys, position);
+        writeIndexHeader(logChannel.size());
+    }
+
+    private void importLegacyMessages(Path messagesPath) throws IOException {
+        int imported = 0;
+        for (String line : Files.readAllLines(messagesPath, UTF_8)) {
+            // timestamp|page-id|url
+            String[] tokens = split(line, '|');
+            if (tokens.length < 2) {
+                continue;
+            }
+            append(tokens[0], ALL_RECIPIENTS, ALL_CATEGORIES, tokens[1], tokens.length > 2 ? tokens[2] : "");
+            imported++;
+        }
+        log.info("Imported {} sent messages from {}", imported, messagesPath);
+    }
+
+    private void writeIndexHeader(long logLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE).putInt(INDEX_MAGIC).putInt(0).putLong(logLength);
+        header.flip();
+        indexChannel.write(header, 0);
+    }
+
+    private void add(long recipientKey, long pageKey) {
+        if (sentKeys.add(key(recipientKey, pageKey)) && recipientKey != ALL_RECIPIENTS_KEY) {
+            signatures.merge(recipientKey, pageKey, (signature, key) -> signature ^ key);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hashes, collisions are negligible for histories of millions of records.
+     */
+    static long recipientKey(String recipient) {
+        return fnv(FNV_OFFSET_BASIS, recipient);
+    }
+
+    static long pageKey(String category, String pageId) {
+        return fnv(fnv(FNV_OFFSET_BASIS, category), pageId);
+    }
+
+    private static long key(long recipientKey, long pageKey) {
+        // the multiplication by an odd constant is a bijection that spreads the bits of both hashes
+        return (recipientKey ^ Long.rotateLeft(pageKey, 31)) * 0x9e3779b97f4a7c15L;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        // separator, so that ("ab", "c") and ("a", "bc") differ
+        hash ^= 0xff;
+        return hash * FNV_PRIME;
+    }
+}
@@ -0,0 +1,333 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Subscribers of the bot with their languages and delivery times.
+ *
+ * Every change is appended to a write-ahead log ("&lt;path&gt;.wal") before it is applied to the in-memory indexes by
+ * chat id and by language. Once the log has grown past SUBSCRIBERS_COMPACT_AFTER records (10000 by default) the
+ * subscribers are written to a snapshot ("&lt;path&gt;.snapshot") and the log is truncated. Recovery loads the
+ * snapshot and replays the log; replaying is idempotent, so a crash between the snapshot and the truncation is safe.
+ * With SUBSCRIBERS_SYNC every change is forced to disk, otherwise it is only flushed to the operating system.
+ *
+ * A store that stays open, e.g., of the delivery daemon of {@link TelegramBotMessageSender}, picks up the changes of
+ * the bot with {@link #refresh()}: it replays the records appended to the log since, or recovers again once the
+ * bot has compacted the store. Stores of the same path in different processes take a lock of "&lt;path&gt;.lock"
+ * to read and write the files, and catch up with each other's changes before they change the store, so a
+ * compaction never drops the records that another store appended. Readers do not take the monitor of the store: a
+ * store that reloads after a compaction of another store builds new indexes and swaps them in at once.
+ */
+public class SubscriberStore implements Closeable {
+    private static final Logger log = LogManager.getLogger(SubscriberStore.class);
+
+    private static final String SUBSCRIBE = "S";
+    private static final String UNSUBSCRIBE = "U";
+    private static final ConcurrentMap<Path, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path snapshotPath;
+    private final Path walPath;
+    private final Path lockPath;
+    /** A JVM can hold only one lock of a file, its stores of the same path take turns on this monitor first */
+    private final Object localLock;
+    private final int compactAfter = Integer.getInteger("SUBSCRIBERS_COMPACT_AFTER", 10_000);
+    private final boolean sync = Boolean.getBoolean("SUBSCRIBERS_SYNC");
+    private volatile Index index = new Index();
+    private FileChannel wal;
+    private int walRecords;
+    /** Bytes of the complete records of the log that have been replayed */
+    private long walOffset;
+    private FileTime snapshotTime;
+    /** Whether neither the snapshot nor the log existed when the store was opened */
+    private boolean created;
+
+    private SubscriberStore(Path path) {
+        this.snapshotPath = Paths.get(path + ".snapshot");
+        this.walPath = Paths.get(path + ".wal");
+        this.lockPath = Paths.get(path + ".lock");
+        this.localLock = LOCAL_LOCKS.computeIfAbsent(lockPath.toAbsolutePath().normalize(), p -> new Object());
+    }
+
+    public static SubscriberStore open(Path path) throws IOException {
+        SubscriberStore store = new SubscriberStore(path);
+        store.locked(store::recover);
+        return store;
+    }
+
+    /**
+     * @return whether the store did not exist before it was opened, as opposed to a store without subscribers
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    public TelegramWikiBot.TelegramUser get(long chatId) {
+        return index.subscribers.get(chatId);
+    }
+
+    public Collection<TelegramWikiBot.TelegramUser> all() {
+        return Collections.unmodifiableCollection(index.subscribers.values());
+    }
+
+    public Set<Long> subscribersOf(String language) {
+        return Collections.unmodifiableSet(index.subscribersByLanguage.getOrDefault(language, Collections.emptySet()));
+    }
+
+    public int size() {
+        return index.subscribers.size();
+    }
+
+    /**
+     * Adds the subscriber or replaces its preferences.
+     */
+    public synchronized void subscribe(TelegramWikiBot.TelegramUser user) throws IOException {
+        locked(() -> {
+            catchUp();
+            appendToWal(SUBSCRIBE + '|' + user);
+            index.apply(user);
+            compactIfNeeded();
+        });
+    }
+
+    public synchronized boolean unsubscribe(long chatId) throws IOException {
+        boolean[] removed = new boolean[1];
+        locked(() -> {
+            catchUp();
+            if (!index.subscribers.containsKey(chatId)) {
+                return;
+            }
+            appendToWal(UNSUBSCRIBE + '|' + chatId);
+            index.remove(chatId);
+            compactIfNeeded();
+            removed[0] = true;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Writes all subscribers to the snapshot and truncates the write-ahead log.
+     */
+    public synchronized void compact() throws IOException {
+        locked(() -> {
+            catchUp();
+            writeSnapshot();
+        });
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path absolutePath = snapshotPath.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, UTF_8)) {
+            for (TelegramWikiBot.TelegramUser user : index.subscribers.values()) {
+                writer.write(user.toString());
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+        wal.truncate(0);
+        walRecords = 0;
+        walOffset = 0;
+        snapshotTime = lastModifiedTime(snapshotPath);
+        log.info("Compacted {} subscribers into {}", index.subscribers.size(), snapshotPath);
+    }
+
+    /**
+     * Applies the changes that another process, e.g., the bot, has made since the store was opened or refreshed.
+     *
+     * @return whether there were changes
+     */
+    public synchronized boolean refresh() throws IOException {
+        boolean[] changed = new boolean[1];
+        locked(() -> changed[0] = catchUp());
+        return changed[0];
+    }
+
+    /**
+     * Applies the changes of other stores, the caller holds the lock.
+     */
+    private boolean catchUp() throws IOException {
+        if (!Objects.equals(lastModifiedTime(snapshotPath), snapshotTime) || wal.size() < walOffset) {
+            // compacted by the other process, its log may have been truncated already; the readers keep the
+            // previous indexes until the new ones are complete
+            Index reloaded = new Index();
+            walRecords = 0;
+            walOffset = 0;
+            loadSnapshot(reloaded);
+            replayWal(reloaded);
+            index = reloaded;
+            log.info("Reloaded {} subscribers from {} and {} log records", reloaded.subscribers.size(), snapshotPath, walRecords);
+            return true;
+        }
+        if (wal.size() > walOffset) {
+            int records = walRecords;
+            replayWal(index);
+            log.debug("Replayed {} subscriber log records", walRecords - records);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        wal.close();
+    }
+
+    private void recover() throws IOException {
+        created = !Files.exists(snapshotPath) && !Files.exists(walPath);
+        Index recovered = new Index();
+        loadSnapshot(recovered);
+        wal = FileChannel.open(walPath, CREATE, WRITE, APPEND);
+        replayWal(recovered);
+        index = recovered;
+        log.info("Recovered {} subscribers from {} and {} log records", recovered.subscribers.size(), snapshotPath, walRecords);
+    }
+
+    private void loadSnapshot(Index target) throws IOException {
+        snapshotTime = lastModifiedTime(snapshotPath);
+        if (snapshotTime != null) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotPath, UTF_8)) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    target.apply(TelegramWikiBot.TelegramUser.fromString(line));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the complete records of the log after {@link #walOffset}; a record that is still being appended is
+     * replayed by the next call. Records of this store are replayed again, which is idempotent.
+     */
+    private void replayWal(Index target) throws IOException {
+        try (InputStream in = new BufferedInputStream(Channels.newInputStream(FileChannel.open(walPath, READ).position(walOffset)))) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                if (b != '\n') {
+                    record.write(b);
+                    continue;
+                }
+                replay(target, new String(record.toByteArray(), UTF_8));
+                walRecords++;
+                walOffset += record.size() + 1;
+                record.reset();
+            }
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path path) throws IOException {
+        return Files.exists(path) ? Files.getLastModifiedTime(path) : null;
+    }
+
+    private static void replay(Index target, String record) {
+        int separator = record.indexOf('|');
+        if (separator < 0) {
+            log.warn("Skip malformed subscriber log record: {}", record);
+            return;
+        }
+        String operation = record.substring(0, separator);
+        String value = record.substring(separator + 1);
+        try {
+            if (SUBSCRIBE.equals(operation)) {
+                target.apply(TelegramWikiBot.TelegramUser.fromString(value));
+            } else if (UNSUBSCRIBE.equals(operation)) {
+                target.remove(Long.parseLong(value));
+            }
+        } catch (RuntimeException e) {
+            // a record torn by a crash can only be the last one
+            log.warn("Skip malformed subscriber log record: {}", record);
+        }
+    }
+
+    /**
+     * Appends the record, the caller holds the lock and has caught up with the log.
+     */
+    private void appendToWal(String record) throws IOException {
+        if (wal.size() > walOffset) {
+            // records are appended under the lock, so an incomplete one was torn by a crash; the record would
+            // continue its line and be skipped with it
+            log.warn("Drop torn subscriber log record of {} bytes", wal.size() - walOffset);
+            wal.truncate(walOffset);
+        }
+        byte[] bytes = (record + '\n').getBytes(UTF_8);
+        wal.write(ByteBuffer.wrap(bytes));
+        if (sync) {
+            wal.force(false);
+        }
+        walRecords++;
+        walOffset += bytes.length;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (walRecords >= compactAfter) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Runs the action with the lock of the files of the store, which other processes respect.
+     */
+    private void locked(StoreAction action) throws IOException {
+        synchronized (localLock) {
+            // closing the channel releases its lock
+            try (FileChannel channel = FileChannel.open(lockPath, CREATE, WRITE)) {
+                channel.lock();
+                action.run();
+            }
+        }
+    }
+
+    private interface StoreAction {
+        void run() throws IOException;
+    }
+
+    /** Subscribers by chat id and by language, changed under the monitor of the store and read without it */
+    private static class Index {
+        final Map<Long, TelegramWikiBot.TelegramUser> subscribers = new ConcurrentHashMap<>();
+        final Map<String, Set<Long>> subscribersByLanguage = new ConcurrentHashMap<>();
+
+        void apply(TelegramWikiBot.TelegramUser user) {
+            remove(user.getId());
+            subscribers.put(user.getId(), user);
+            for (String language : user.getLanguages()) {
+                subscribersByLanguage.computeIfAbsent(language, l -> ConcurrentHashMap.newKeySet()).add(user.getId());
+            }
+        }
+
+        void remove(long chatId) {
+            TelegramWikiBot.TelegramUser previous = subscribers.remove(chatId);
+            if (previous != null) {
+                for (String language : previous.getLanguages()) {
+                    subscribersByLanguage.getOrDefault(language, Collections.emptySet()).remove(chatId);
+                }
+            }
+        }
+    }
+}
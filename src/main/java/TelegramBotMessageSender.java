@@ -1,45 +1,46 @@
-import com.pengrad.telegrambot.TelegramBot;
-import com.pengrad.telegrambot.TelegramBotAdapter;
-import com.pengrad.telegrambot.request.SendMessage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static java.lang.System.getProperty;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.Files.write;
-import static java.nio.file.StandardOpenOption.APPEND;
-import static java.nio.file.StandardOpenOption.CREATE;
 import static java.util.Arrays.asList;
-import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.groupingBy;
-import static org.apache.commons.lang3.StringUtils.split;
 
 /**
+ * Sends the page of the day to every subscriber, once per run, or with -DDAEMON whenever a subscriber's delivery
+ * time comes (see {@link DeliveryScheduler}).
+ *
  * @author mipansh
  *         Date: 2016/09/11
  */
 public class TelegramBotMessageSender {
 
     private static final Logger logger = LogManager.getLogger(TelegramBotMessageSender.class);
+    /** Messages sent before the sent history was introduced, imported into the history on its first use */
     public static final Path MESSAGES_FILE_PATH = Paths.get(getProperty("MESSAGES_FILE_PATH", "bot.msg"));
+    public static final Path SENT_HISTORY_PATH = Paths.get(getProperty("SENT_HISTORY_PATH", "sent.history"));
     public static final Path IMPORT_FILE_PATH = Paths.get(getProperty("IMPORT_FILE_PATH", "wiki.pages.csv"));
+    public static final Path RANKED_CATALOG_PATH = Paths.get(getProperty("RANKED_CATALOG_PATH", "wiki.pages.bin"));
+    /** Links of the catalog pages to their native language, resolved by {@link WikiCatalogExport} */
+    public static final Path LANGLINKS_PATH = Paths.get(getProperty("LANGLINKS_PATH", "wiki.langlinks.csv"));
+    public static final Path DELIVERY_LOG_PATH = Paths.get(getProperty("DELIVERY_LOG_PATH", "deliveries.log"));
+    public static final Path SUBSCRIBERS_PATH = Paths.get(getProperty("SUBSCRIBERS_PATH", "subscribers"));
 
-    public static final String BASEURL = "https://api.telegram.org/bot";
+    public static final String BASEURL = getProperty("TELEGRAM_BASEURL", "https://api.telegram.org/bot");
     public static final String TOKEN = getProperty("BOT_TOKEN", "248586768:AAFY8ebEYjlyq0DuBzVbQnEvC5NDwoP3eK0");
 
+    /** Recipients from before the bot had subscribers, they become subscribers to all languages */
+    private static final List<Long> LEGACY_RECIPIENTS = asList(59323870L, 65209857L, 295144283L, 290014039L);
+
     public static final Map<String, String> AVAILABLE_CATEGORIES = new LinkedHashMap<String, String>() {{
         put("en","List_of_English_writers");
         put("fr","List_of_French-language_authors");
@@ -48,79 +49,116 @@ public class TelegramBotMessageSender {
     }};
 
     public static void main(String[] args) throws IOException {
-        List<WikiCatalogExport.WikiPage> wikiPages = new ArrayList<>();
-        try (Stream<String> stream = Files.lines(IMPORT_FILE_PATH)) {
-            stream.forEach(line -> wikiPages.add(WikiCatalogExport.WikiPage.fromString(line)));
+        if (Boolean.getBoolean("DAEMON")) {
+            DeliveryScheduler.main(args);
+            return;
+        }
+        FileChannel lock = lockSending();
+        try {
+            RankedCatalog catalog = RankedCatalog.load(IMPORT_FILE_PATH, RANKED_CATALOG_PATH);
+            LangLinks langLinks = LangLinks.load(LANGLINKS_PATH);
+            LocalDate today = LocalDate.now();
+
+            try (SentHistory history = SentHistory.open(SENT_HISTORY_PATH, MESSAGES_FILE_PATH);
+                 SubscriberStore subscribers = openSubscribers();
+                 TelegramBroadcaster broadcaster = new TelegramBroadcaster(BASEURL + TOKEN, DELIVERY_LOG_PATH)) {
+                send(today, subscribers.all(), new SelectionEngine(catalog, history, AVAILABLE_CATEGORIES), langLinks, history, broadcaster);
+            }
+        } finally {
+            lock.close();
         }
-        Map<String, TreeSet<WikiCatalogExport.WikiPage>> rankedPages = wikiPages.stream().
-                collect(groupingBy(WikiCatalogExport.WikiPage::getCategory, Collectors.toCollection(TreeSet::new)));
-
-        int dayOfMonth = LocalDateTime.now().getDayOfMonth();
-        String lang = new ArrayList<>(AVAILABLE_CATEGORIES.keySet()).get(dayOfMonth % 4);
-        logger.info("Language of the day {} is {}", dayOfMonth, lang);
-
-        String category = AVAILABLE_CATEGORIES.get(lang);
-        WikiCatalogExport.WikiPage page = getHighestNotYetSent(rankedPages.get(category));
-        String url = getInNativeLanguageIfPossible(lang, page);
-        logger.info("Wiki page of the day in " + lang + " : " + url);
-
-        sendMessage(url);
-        String message = LocalDateTime.now() + "|" + page.getId() + "|" + url;
-        logger.info(message);
-        write(MESSAGES_FILE_PATH, singletonList(message), UTF_8, APPEND, CREATE);
     }
 
-    private static WikiCatalogExport.WikiPage getHighestNotYetSent(TreeSet<WikiCatalogExport.WikiPage> rankedPages) throws IOException {
-        final HashSet<String> messageParts = readMessageParts();
-
-        // check if page has already been sent
-        WikiCatalogExport.WikiPage highest = rankedPages.last();
-        while (messageParts.contains(highest.getId())) {
-            rankedPages.pollLast();
-            highest = rankedPages.last();
+    /**
+     * Locks the sent history for a run of the sender or the daemon, one of them sends at a time. The lock is held
+     * until the returned channel is closed, or the process ends.
+     *
+     * @throws IOException if another process holds the lock
+     */
+    static FileChannel lockSending() throws IOException {
+        Path lockPath = Paths.get(SENT_HISTORY_PATH + ".lock");
+        FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null)
+                return channel;
+        } catch (OverlappingFileLockException e) {
+            // held by this process
         }
+        channel.close();
+        throw new IOException("Pages are being sent by another sender holding " + lockPath);
+    }
 
-        return highest;
+    /**
+     * Opens the subscriber store, the legacy recipients become its subscribers when it is created. A store whose
+     * subscribers have all unsubscribed stays empty.
+     */
+    static SubscriberStore openSubscribers() throws IOException {
+        SubscriberStore subscribers = SubscriberStore.open(SUBSCRIBERS_PATH);
+        if (subscribers.isCreated()) {
+            importLegacyRecipients(subscribers);
+        }
+        return subscribers;
     }
 
-    private static HashSet<String> readMessageParts() throws IOException {
-        try {
-            Files.createFile(MESSAGES_FILE_PATH);
-        } catch (IOException ignore) {
+    /**
+     * Sends the pages of the day to the recipients and records them in the history. The date identifies the
+     * broadcast, so recipients that already have the message of the day are skipped.
+     */
+    static TelegramBroadcaster.Report send(LocalDate date, Collection<TelegramWikiBot.TelegramUser> recipients, SelectionEngine engine,
+                                           LangLinks langLinks, SentHistory history, TelegramBroadcaster broadcaster) throws IOException {
+        Map<Long, SelectionEngine.Selection> selections = engine.select(date, recipients);
+
+        // subscribers of the same group share the selection
+        Map<SelectionEngine.Selection, List<String>> chats = new IdentityHashMap<>();
+        Map<SelectionEngine.Selection, String> urls = new IdentityHashMap<>();
+        Map<Long, String> messages = new LinkedHashMap<>();
+        for (Map.Entry<Long, SelectionEngine.Selection> selection : selections.entrySet()) {
+            String url = urls.computeIfAbsent(selection.getValue(),
+                    s -> getInNativeLanguageIfPossible(langLinks, s.getLanguage(), s.getPage()));
+            chats.computeIfAbsent(selection.getValue(), s -> new ArrayList<>()).add(String.valueOf(selection.getKey()));
+            messages.put(selection.getKey(), url);
         }
-        List<String> messages = Files.readAllLines(MESSAGES_FILE_PATH);
-        final HashSet<String> messageParts = new HashSet<>();
-        messages.stream().forEach(line -> {
-            messageParts.addAll(asList(split(line, '|')));
-        });
-        return messageParts;
+        TelegramBroadcaster.Report report = broadcaster.broadcast(date.toString(), messages);
+        for (Map.Entry<SelectionEngine.Selection, List<String>> selection : chats.entrySet()) {
+            WikiCatalogExport.WikiPage page = selection.getKey().getPage();
+            // failed chats get the page again with the next broadcast, rejected chats would reject it again
+            List<String> sent = selection.getValue().stream().
+                    filter(chatId -> isFinal(report.statuses.get(Long.valueOf(chatId)))).
+                    collect(Collectors.toList());
+            logger.info("Sent {} in {} to {} of {} subscribers: {}", page.getId(), selection.getKey().getCategory(),
+                    sent.size(), selection.getValue().size(), urls.get(selection.getKey()));
+            history.append(sent, selection.getKey().getCategory(), page.getId(), urls.get(selection.getKey()));
+        }
+        return report;
     }
 
-    private static String getInNativeLanguageIfPossible(String lang, WikiCatalogExport.WikiPage page) throws IOException {
-        String url = page.getUrl().trim();
-        if ("en".equals(lang) && url.contains("en.wikipedia"))
-            return url;
+    private static boolean isFinal(TelegramBroadcaster.Status status) {
+        return status == TelegramBroadcaster.Status.DELIVERED || status == TelegramBroadcaster.Status.REJECTED;
+    }
 
-        try {
-            int mainPathInd = url.lastIndexOf('/')+1;
-            String urlEncoded  =  url.substring(0,mainPathInd) + URLEncoder.encode(url.substring(mainPathInd),"UTF-8");
-            Document doc = Jsoup.connect(urlEncoded).get();
-            logger.info("Got the page in native language '{}'", url);
-            Elements nativeLink = doc.select("div#p-lang > div > ul > li > a[lang=" + lang + "]");
-            url = nativeLink.get(0).attr("href");
-        } catch (Exception exception) {
-            logger.info("Could not find page in native language '{}': {}", url, exception);
+    private static void importLegacyRecipients(SubscriberStore subscribers) throws IOException {
+        for (Long recipient : LEGACY_RECIPIENTS) {
+            subscribers.subscribe(TelegramWikiBot.TelegramUser.builder().
+                    id(recipient).
+                    languages(new ArrayList<>(AVAILABLE_CATEGORIES.keySet())).
+                    deliveryTime(TelegramWikiBot.DEFAULT_DELIVERY_TIME).
+                    timeZone(ZoneId.systemDefault()).
+                    build());
         }
-        return url;
+        logger.info("Imported {} legacy recipients as subscribers", LEGACY_RECIPIENTS.size());
     }
 
+    private static String getInNativeLanguageIfPossible(LangLinks langLinks, String lang, WikiCatalogExport.WikiPage page) {
+        String url = page.getUrl().trim();
+        if (page.getProject().startsWith(lang + "."))
+            return url;
 
-    private static void sendMessage(String message) {
-        TelegramBot bot = TelegramBotAdapter.build(TOKEN);
-        Object[] users = new Object[] {59323870, 65209857, 295144283, 290014039};
-        for (Object user : users) {
-            bot.execute(new SendMessage(user, message));
+        String nativeUrl = langLinks.url(page.getId(), lang);
+        if (nativeUrl == null) {
+            logger.info("No page in native language '{}' of '{}'", lang, url);
+            return url;
         }
+        return nativeUrl;
     }
 
     static class Person {
@@ -0,0 +1,304 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static org.apache.commons.lang3.StringUtils.split;
+
+/**
+ * Sends messages to many Telegram chats concurrently.
+ *
+ * The overall rate is the rate limit of the Telegram API host (see {@link RateLimiter}, 30 messages per second by
+ * default) and a chat gets at most one message per second. A 429 response pauses all sending for its retry_after,
+ * other failures are retried with jittered exponential backoff. The outcome of every recipient is appended to the
+ * delivery log, so a broadcast that is run again, e.g., after a crash, skips the recipients that already have it.
+ * The log keeps a hash of each message, so the run again can tell whether it skips the same message.
+ * Outcomes, delivery times and throttling are recorded in {@link Metrics}. The outcomes of the last broadcasts are
+ * kept in memory, so a broadcaster that stays open, e.g., of the delivery daemon, reads the log once per broadcast.
+ *
+ * Configuration with VM properties:
+ *   * BROADCAST_THREADS: number of messages in flight, 8 by default
+ *   * BROADCAST_MAX_ATTEMPTS: attempts per recipient, 5 by default
+ *   * DELIVERY_LOG_PATH: path of the delivery log, ./deliveries.log by default
+ */
+public class TelegramBroadcaster implements Closeable {
+    private static final Logger log = LogManager.getLogger(TelegramBroadcaster.class);
+
+    private static final long CHAT_INTERVAL_MS = 1000;
+    private static final int CACHED_BROADCASTS = 4;
+    private static final Metrics.Histogram deliveryLatency = Metrics.histogram("telegram_delivery_duration_seconds", "Time of delivering a message to a chat, including its retries");
+    private static final Metrics.Histogram broadcastLatency = Metrics.histogram("telegram_broadcast_duration_seconds", "Time of a broadcast to all its recipients");
+    private static final Metrics.Counter throttled = Metrics.counter("telegram_throttled_total", "Messages that Telegram throttled with a 429 response");
+    private static final Metrics.Counter skipped = messages("skipped");
+    private static final Map<Status, Metrics.Counter> outcomeMessages = new EnumMap<>(Status.class);
+
+    static {
+        for (Status status : Status.values()) {
+            outcomeMessages.put(status, messages(status.name().toLowerCase()));
+        }
+    }
+
+    private final String apiUrl;
+    private final Path deliveryLogPath;
+    private final int maxAttempts = Integer.getInteger("BROADCAST_MAX_ATTEMPTS", 5);
+    private final ExecutorService senders;
+    private final Map<Long, Long> nextChatSlots = new ConcurrentHashMap<>();
+    /** Outcomes of the recipients that need no further attempts by broadcast, of the last broadcasts */
+    private final Map<String, Map<Long, Outcome>> completed = new RecentBroadcasts();
+    private BufferedWriter deliveryLog;
+
+    public TelegramBroadcaster(String apiUrl, Path deliveryLogPath) {
+        this.apiUrl = apiUrl;
+        this.deliveryLogPath = deliveryLogPath;
+        AtomicInteger counter = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Integer.getInteger("BROADCAST_THREADS", 8), runnable -> {
+            Thread thread = new Thread(runnable, "telegram-broadcast-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends the message of every recipient unless the delivery log already has an outcome for it within the broadcast.
+     * A skipped recipient is reported with its logged status if it was the same message, e.g., of a run that stopped
+     * before the message was recorded as sent.
+     *
+     * @param broadcastId identifies the broadcast across runs, e.g., the date and the category
+     * @param messages    message per chat id
+     */
+    public Report broadcast(String broadcastId, Map<Long, String> messages) throws IOException {
+        long start = System.nanoTime();
+        Map<Long, Outcome> done = completedOutcomes(broadcastId);
+        Report report = new Report();
+        Map<Long, Future<Status>> outcomes = new LinkedHashMap<>();
+        synchronized (this) {
+            if (deliveryLog == null) {
+                deliveryLog = Files.newBufferedWriter(deliveryLogPath, UTF_8, CREATE, APPEND);
+            }
+        }
+        messages.forEach((chatId, text) -> {
+            Outcome outcome = done.get(chatId);
+            if (outcome != null) {
+                if (outcome.messageHash != null && outcome.messageHash == text.hashCode())
+                    report.statuses.put(chatId, outcome.status);
+                report.skipped++;
+                skipped.increment();
+            } else {
+                outcomes.put(chatId, senders.submit(() -> deliver(broadcastId, chatId, text)));
+            }
+        });
+        for (Map.Entry<Long, Future<Status>> outcome : outcomes.entrySet()) {
+            try {
+                Status status = outcome.getValue().get();
+                report.statuses.put(outcome.getKey(), status);
+                if (status == Status.DELIVERED)
+                    report.delivered++;
+                else
+                    report.failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted broadcast " + broadcastId, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not broadcast " + broadcastId, e.getCause());
+            }
+        }
+        broadcastLatency.observeSince(start);
+        report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Broadcast {}: {}", broadcastId, report);
+        return report;
+    }
+
+    private Status deliver(String broadcastId, long chatId, String text) throws IOException, InterruptedException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("chat_id", String.valueOf(chatId));
+        parameters.put("text", text);
+        String url = apiUrl + "/sendMessage";
+        RateLimiter hostLimiter = RateLimiter.forHost(URI.create(url).getHost());
+        long start = System.nanoTime();
+        Status status = Status.FAILED;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            awaitChatSlot(chatId);
+            long retryAfterMs;
+            try {
+                HttpUtils.Response response = HttpUtils.postForm(url, parameters);
+                if (response.status == 200) {
+                    status = Status.DELIVERED;
+                    break;
+                }
+                if (response.status == 429) {
+                    retryAfterMs = TimeUnit.SECONDS.toMillis(retryAfterSeconds(response));
+                    throttled.increment();
+                    log.warn("Throttled while sending to chat {}, retry after {} ms", chatId, retryAfterMs);
+                    hostLimiter.pause(retryAfterMs);
+                } else if (response.status == 400 || response.status == 403) {
+                    // chat not found, bot blocked by the user: retrying does not help
+                    log.warn("Chat {} rejected the message: {}", chatId, response.body);
+                    status = Status.REJECTED;
+                    break;
+                } else {
+                    log.warn("Could not send to chat {} ({}): {}", chatId, response.status, response.body);
+                    retryAfterMs = HttpUtils.backoffMillis(attempt);
+                }
+            } catch (IOException e) {
+                log.warn("Could not send to chat {}: {}", chatId, e.toString());
+                retryAfterMs = HttpUtils.backoffMillis(attempt);
+            }
+            if (attempt < maxAttempts)
+                TimeUnit.MILLISECONDS.sleep(retryAfterMs);
+        }
+        deliveryLatency.observeSince(start);
+        outcomeMessages.get(status).increment();
+        recordOutcome(broadcastId, chatId, status, text);
+        return status;
+    }
+
+    /**
+     * @param outcome status of the delivery, or skipped if the delivery log already has an outcome
+     */
+    private static Metrics.Counter messages(String outcome) {
+        return Metrics.counter("telegram_messages_total", "Messages of broadcasts by their outcome", "outcome", outcome);
+    }
+
+    /** At most one message per second to a chat */
+    private void awaitChatSlot(long chatId) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        // the slot is taken atomically, concurrent sends to the same chat get consecutive slots
+        long next = nextChatSlots.merge(chatId, now + CHAT_INTERVAL_MS, (taken, own) -> Math.max(now, taken) + CHAT_INTERVAL_MS);
+        TimeUnit.MILLISECONDS.sleep(next - CHAT_INTERVAL_MS - now);
+    }
+
+    private static long retryAfterSeconds(HttpUtils.Response response) {
+        try {
+            // {"ok":false,"error_code":429,"description":"...","parameters":{"retry_after":5}}
+            JSONObject parameters = (JSONObject) ((JSONObject) new JSONParser().parse(response.body)).get("parameters");
+            if (parameters != null && parameters.get("retry_after") instanceof Number) {
+                return ((Number) parameters.get("retry_after")).longValue();
+            }
+        } catch (Exception ignore) {
+        }
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(HttpUtils.retryAfterMillis(response.retryAfter)));
+    }
+
+    private synchronized void recordOutcome(String broadcastId, long chatId, Status status, String text) throws IOException {
+        deliveryLog.write(broadcastId + '|' + chatId + '|' + status + '|' + LocalDateTime.now() + '|' + Integer.toHexString(text.hashCode()));
+        deliveryLog.newLine();
+        deliveryLog.flush();
+        if (status != Status.FAILED && completed.containsKey(broadcastId)) {
+            completed.get(broadcastId).put(chatId, new Outcome(status, text.hashCode()));
+        }
+    }
+
+    /**
+     * @return recipients of the broadcast that need no further attempts, a copy
+     */
+    public synchronized Set<Long> completed(String broadcastId) throws IOException {
+        return new HashSet<>(completedOutcomes(broadcastId).keySet());
+    }
+
+    /**
+     * @return outcomes of the recipients of the broadcast that need no further attempts, a copy
+     */
+    private synchronized Map<Long, Outcome> completedOutcomes(String broadcastId) throws IOException {
+        Map<Long, Outcome> outcomes = completed.get(broadcastId);
+        if (outcomes == null) {
+            outcomes = readOutcomes(broadcastId);
+            completed.put(broadcastId, outcomes);
+        }
+        return new HashMap<>(outcomes);
+    }
+
+    /**
+     * @return outcomes of the recipients of the broadcast that need no further attempts
+     */
+    private Map<Long, Outcome> readOutcomes(String broadcastId) throws IOException {
+        Map<Long, Outcome> done = new HashMap<>();
+        if (!Files.exists(deliveryLogPath)) {
+            return done;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(deliveryLogPath, UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // broadcast|chat|status|timestamp|message hash, the hash is missing in older logs
+                String[] tokens = split(line, '|');
+                if (tokens.length >= 3 && tokens[0].equals(broadcastId) && !Status.FAILED.name().equals(tokens[2])) {
+                    Integer messageHash = tokens.length >= 5 ? Integer.valueOf((int) Long.parseLong(tokens[4], 16)) : null;
+                    done.put(Long.parseLong(tokens[1]), new Outcome(Status.valueOf(tokens[2]), messageHash));
+                }
+            }
+        }
+        return done;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        senders.shutdown();
+        if (deliveryLog != null) {
+            deliveryLog.close();
+            deliveryLog = null;
+        }
+    }
+
+    public enum Status {
+        DELIVERED, REJECTED, FAILED
+    }
+
+    /** Logged outcome of a recipient */
+    private static class Outcome {
+        final Status status;
+        /** Hash of the message, null if it is not known */
+        final Integer messageHash;
+
+        Outcome(Status status, Integer messageHash) {
+            this.status = status;
+            this.messageHash = messageHash;
+        }
+    }
+
+    /** Completed recipients by broadcast, the eldest broadcast is dropped beyond {@link #CACHED_BROADCASTS} */
+    private static class RecentBroadcasts extends LinkedHashMap<String, Map<Long, Outcome>> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<Long, Outcome>> eldest) {
+            return size() > CACHED_BROADCASTS;
+        }
+    }
+
+    public static class Report {
+        /** Status per chat that was sent to or that was skipped with the same message */
+        public final Map<Long, Status> statuses = new HashMap<>();
+        public int delivered;
+        public int failed;
+        public int skipped;
+        public long elapsedMillis;
+
+        @Override
+        public String toString() {
+            return String.format("delivered=%d, failed=%d, skipped=%d in %d ms", delivered, failed, skipped, elapsedMillis);
+        }
+    }
+}
@@ -1,48 +1,171 @@
-import com.pengrad.telegrambot.Callback;
-import com.pengrad.telegrambot.TelegramBot;
-import com.pengrad.telegrambot.TelegramBotAdapter;
-import com.pengrad.telegrambot.model.Update;
-import com.pengrad.telegrambot.request.GetUpdates;
-import com.pengrad.telegrambot.response.GetUpdatesResponse;
+import lombok.Builder;
+import lombok.Data;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONObject;
 
 import java.io.IOException;
-import java.util.function.Function;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.System.getProperty;
+import static java.util.Arrays.asList;
 
 /**
  * Telegram bot that subscribes users to daily wiki lists
+ *
+ * Configuration with VM properties:
+ *   * OFFSET_FILE_PATH: file with the offset of the next update, ./bot.offset by default
+ *   * UPDATE_LANES: number of chats handled in parallel, 8 by default
+ *   * MAX_UPDATES_IN_FLIGHT: number of updates queued before polling waits, 1000 by default
+ *   * SUBSCRIBERS_PATH: path of the subscriber store shared with {@link TelegramBotMessageSender}, ./subscribers by default
  */
 public class TelegramWikiBot {
 
     private static final Logger logger = LogManager.getLogger(TelegramWikiBot.class);
 
+    public static final Path OFFSET_FILE_PATH = Paths.get(getProperty("OFFSET_FILE_PATH", "bot.offset"));
+    private static final String API_URL = TelegramBotMessageSender.BASEURL + TelegramBotMessageSender.TOKEN;
+    static final LocalTime DEFAULT_DELIVERY_TIME = LocalTime.of(9, 0);
 
-    public static void main(String[] args) {
-        TelegramBot bot = TelegramBotAdapter.build(TelegramBotMessageSender.TOKEN);
-        bot.execute(new GetUpdates(), new Callback<GetUpdates, GetUpdatesResponse>() {
-            @Override
-            public void onResponse(GetUpdates getUpdates, GetUpdatesResponse updatesResponse) {
-                // process all the updates from users and send back the responses to each and every one
-                updatesResponse.updates().stream().map(new Function<Update, Object>() {
-                    @Override
-                    public Object apply(Update update) {
-                        update.message();
-                        return null;
-                    }
-                });
+    public static void main(String[] args) throws IOException {
+        SubscriberStore subscribers = SubscriberStore.open(TelegramBotMessageSender.SUBSCRIBERS_PATH);
+        UpdatePoller poller = new UpdatePoller(API_URL, OFFSET_FILE_PATH, update -> handle(subscribers, update),
+                Integer.getInteger("UPDATE_LANES", 8), Integer.getInteger("MAX_UPDATES_IN_FLIGHT", 1000));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                poller.close();
+                subscribers.close();
+            } catch (IOException e) {
+                logger.error("Could not stop polling", e);
             }
+        }, "bot-shutdown"));
+        poller.run();
+    }
 
-            @Override
-            public void onFailure(GetUpdates getUpdates, IOException e) {
-                logger.error("Cannot get updates", e);
-            }
-        });
+    static void handle(SubscriberStore subscribers, JSONObject update) throws IOException {
+        JSONObject message = (JSONObject) update.get("message");
+        if (message == null || !(message.get("text") instanceof String)) {
+            return;
+        }
+        long chatId = UpdatePoller.chatId(update);
+        String[] command = StringUtils.split(((String) message.get("text")).trim(), ' ');
+        logger.info("Chat {} sent: {}", chatId, asList(command));
+        TelegramUser user = subscribers.get(chatId);
+        switch (command.length == 0 ? "" : command[0]) {
+            case "/start":
+                if (user == null) {
+                    JSONObject from = (JSONObject) message.get("from");
+                    user = TelegramUser.builder().
+                            id(chatId).
+                            firstName(from == null ? null : (String) from.get("first_name")).
+                            lastName(from == null ? null : (String) from.get("last_name")).
+                            languages(new ArrayList<>(TelegramBotMessageSender.AVAILABLE_CATEGORIES.keySet())).
+                            deliveryTime(DEFAULT_DELIVERY_TIME).
+                            timeZone(ZoneId.systemDefault()).
+                            build();
+                    subscribers.subscribe(user);
+                }
+                reply(chatId, "Subscribed: " + describe(user));
+                break;
+            case "/stop":
+                subscribers.unsubscribe(chatId);
+                reply(chatId, "Unsubscribed.");
+                break;
+            case "/languages":
+                List<String> languages = asList(command).subList(1, command.length);
+                if (user == null || languages.isEmpty() || !TelegramBotMessageSender.AVAILABLE_CATEGORIES.keySet().containsAll(languages)) {
+                    reply(chatId, "Usage: /languages " + String.join(" ", TelegramBotMessageSender.AVAILABLE_CATEGORIES.keySet()));
+                    break;
+                }
+                user = user.toBuilder().languages(new ArrayList<>(languages)).build();
+                subscribers.subscribe(user);
+                reply(chatId, "Subscribed: " + describe(user));
+                break;
+            case "/time":
+                if (user == null || command.length < 2) {
+                    reply(chatId, "Usage: /time 09:00 [Europe/Amsterdam]");
+                    break;
+                }
+                try {
+                    user = user.toBuilder().
+                            deliveryTime(LocalTime.parse(command[1])).
+                            timeZone(command.length > 2 ? ZoneId.of(command[2]) : user.getTimeZone()).
+                            build();
+                } catch (RuntimeException e) {
+                    reply(chatId, "Usage: /time 09:00 [Europe/Amsterdam]");
+                    break;
+                }
+                subscribers.subscribe(user);
+                reply(chatId, "Subscribed: " + describe(user));
+                break;
+            default:
+                reply(chatId, "Sends one wiki page a day in one of the languages: " + TelegramBotMessageSender.AVAILABLE_CATEGORIES.keySet() + "\n" +
+                        "/start, /stop, /languages en fr, /time 09:00 Europe/Amsterdam");
+        }
     }
 
-    public class TelegramUser {
-        private String id;
+    private static String describe(TelegramUser user) {
+        return String.join(" ", user.getLanguages()) + " at " + user.getDeliveryTime() + " " + user.getTimeZone().getId();
+    }
+
+    static void reply(long chatId, String text) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("chat_id", String.valueOf(chatId));
+        parameters.put("text", text);
+        HttpUtils.Response response = HttpUtils.postForm(API_URL + "/sendMessage", parameters);
+        if (response.status != 200) {
+            logger.warn("Could not reply to chat {} ({}): {}", chatId, response.status, response.body);
+        }
+    }
+
+    /**
+     * Subscriber with the languages to receive pages in and the local time to receive them at.
+     */
+    @Data
+    @Builder(toBuilder = true)
+    public static class TelegramUser {
+        private long id;
         private String firstName;
         private String lastName;
+        private List<String> languages;
+        private LocalTime deliveryTime;
+        private ZoneId timeZone;
+
+        @Override
+        public String toString() {
+            return  id + "|" +
+                    clean(firstName) + '|' +
+                    clean(lastName) + '|' +
+                    String.join(",", languages) + '|' +
+                    deliveryTime + '|' +
+                    timeZone.getId();
+        }
+
+        public static TelegramUser fromString(String line) {
+            String[] tokens = StringUtils.splitPreserveAllTokens(line, '|');
+            if (tokens.length != 6) {
+                throw new IllegalArgumentException("Line has " + tokens.length + " while 6 are expected: " + line);
+            }
+            return TelegramUser.builder().
+                    id(Long.parseLong(tokens[0])).
+                    firstName(tokens[1]).
+                    lastName(tokens[2]).
+                    languages(asList(StringUtils.split(tokens[3], ','))).
+                    deliveryTime(LocalTime.parse(tokens[4])).
+                    timeZone(ZoneId.of(tokens[5])).
+                    build();
+        }
+
+        private static String clean(String name) {
+            return name == null ? "" : name.replaceAll("[|\\r\\n]", " ");
+        }
     }
 }
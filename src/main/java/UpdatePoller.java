@@ -0,0 +1,182 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Long-polls Telegram for updates and hands them over to a handler.
+ *
+ * Updates of the same chat are handled in order on the same lane, updates of different chats are handled in
+ * parallel on different lanes. No more than maxInFlight updates are queued or being handled: when the handlers
+ * fall behind, polling waits, so a burst of commands does not pile up in memory. The offset of the next update is
+ * persisted after every poll, so a restarted bot continues where it stopped. Updates that were still queued when
+ * the process died are not redelivered, since Telegram forgets updates once a greater offset was requested.
+ */
+public class UpdatePoller implements Closeable {
+    private static final Logger log = LogManager.getLogger(UpdatePoller.class);
+
+    private static final int POLL_TIMEOUT_SECONDS = 25;
+    private static final int POLL_LIMIT = 100;
+
+    private final String apiUrl;
+    private final Path offsetPath;
+    private final UpdateHandler handler;
+    private final ExecutorService[] lanes;
+    private final Semaphore inFlight;
+    private volatile boolean running = true;
+    /** Thread of {@link #run()}, null if it is not polling */
+    private volatile Thread pollingThread;
+    private long offset;
+
+    public UpdatePoller(String apiUrl, Path offsetPath, UpdateHandler handler, int lanes, int maxInFlight) throws IOException {
+        this.apiUrl = apiUrl;
+        this.offsetPath = offsetPath;
+        this.handler = handler;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.lanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            String name = "update-lane-" + i;
+            this.lanes[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, name));
+        }
+        this.offset = Files.exists(offsetPath) ? Long.parseLong(new String(Files.readAllBytes(offsetPath), UTF_8).trim()) : 0;
+        log.info("Poll updates from offset {}", offset);
+    }
+
+    /**
+     * Polls until the poller is closed.
+     */
+    public void run() {
+        pollingThread = Thread.currentThread();
+        try {
+            poll();
+        } finally {
+            pollingThread = null;
+        }
+    }
+
+    private void poll() {
+        while (running) {
+            try {
+                pollOnce();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Cannot get updates", e);
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void pollOnce() throws Exception {
+        String url = apiUrl + "/getUpdates?timeout=" + POLL_TIMEOUT_SECONDS + "&limit=" + POLL_LIMIT + (offset > 0 ? "&offset=" + offset : "");
+        JSONObject response = (JSONObject) HttpUtils.getJSONResource(url);
+        if (!Boolean.TRUE.equals(response.get("ok"))) {
+            throw new IOException("Telegram refused getUpdates: " + response);
+        }
+        JSONArray updates = (JSONArray) response.get("result");
+        for (Object updateObject : updates) {
+            JSONObject update = (JSONObject) updateObject;
+            long updateId = ((Number) update.get("update_id")).longValue();
+            // updates that are not handed over are polled again after a restart
+            if (!running)
+                break;
+            inFlight.acquire();
+            try {
+                lanes[Math.floorMod(Long.hashCode(chatId(update)), lanes.length)].execute(() -> {
+                    try {
+                        handler.handle(update);
+                    } catch (Exception e) {
+                        log.error("Could not handle update " + updateId, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                break;
+            }
+            offset = Math.max(offset, updateId + 1);
+        }
+        if (!updates.isEmpty()) {
+            persistOffset();
+        }
+    }
+
+    /**
+     * @return chat of the update, updates without a chat share the lane of chat 0
+     */
+    static long chatId(JSONObject update) {
+        for (String kind : new String[]{"message", "edited_message", "channel_post", "edited_channel_post"}) {
+            JSONObject message = (JSONObject) update.get(kind);
+            if (message != null && message.get("chat") != null) {
+                return ((Number) ((JSONObject) message.get("chat")).get("id")).longValue();
+            }
+        }
+        JSONObject callbackQuery = (JSONObject) update.get("callback_query");
+        if (callbackQuery != null && callbackQuery.get("from") != null) {
+            return ((Number) ((JSONObject) callbackQuery.get("from")).get("id")).longValue();
+        }
+        return 0;
+    }
+
+    private void persistOffset() throws IOException {
+        Path absolutePath = offsetPath.toAbsolutePath();
+        Path tempPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        Files.write(tempPath, String.valueOf(offset).getBytes(UTF_8));
+        Files.move(tempPath, absolutePath, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Stops polling and waits for the poll in progress to end and for the queued updates to be handled.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        Thread polling = pollingThread;
+        try {
+            if (polling != null && polling != Thread.currentThread()) {
+                // a long poll ends within its timeout
+                polling.join(TimeUnit.SECONDS.toMillis(POLL_TIMEOUT_SECONDS + 5));
+                if (polling.isAlive())
+                    log.warn("Polling did not stop within {} s", POLL_TIMEOUT_SECONDS + 5);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(30, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        persistOffset();
+    }
+
+    public interface UpdateHandler {
+        void handle(JSONObject update) throws Exception;
+    }
+}
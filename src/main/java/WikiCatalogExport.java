@@ -1,30 +1,66 @@
-import junit.framework.Assert;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.URI;
+import java.io.StringReader;
+import java.net.URLEncoder;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static java.lang.String.format;
-import static java.lang.String.valueOf;
 import static java.lang.System.getProperty;
-import static java.util.stream.Collectors.summingInt;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.apache.logging.log4j.LogManager.getLogger;
 
 /**
@@ -33,7 +69,18 @@ import static org.apache.logging.log4j.LogManager.getLogger;
  * Configuration with VM properties:
  *   * LIST_TO_EXTRACT: one of the list of categories, e.g., List_of_Spanish-language_authors
  *   * EXTRACT_CSS_PATH: CSS selector for items of the list: "div#mw-content-text > ul > li > a:first-child"
+ *   * WIKIDATA_CSV: path or URL of the CSV result of a Wikidata query to fetch instead of the lists, e.g., ./books.csv (see {@link WikidataCsvSource})
+ *   * WIKIDATA_CATEGORY: category of the pages of WIKIDATA_CSV, Books by default
  *   * PATH_TO_EXPORT: path to export the list to, e.g., ./wiki.pages.csv
+ *   * RANKED_CATALOG_PATH: path to compile the ranked catalog to, ./wiki.pages.bin by default
+ *   * LANGLINKS_PATH: path of the links of the pages to their native language, ./wiki.langlinks.csv by default
+ *   * INCREMENTAL: refresh the existing export, only pages that are new or older than MAX_AGE_DAYS (30 by default) are fetched
+ *   * EXPORT_THREADS: number of pages fetched concurrently, 8 by default
+ *   * EXPORT_PENDING_BATCHES: batches of 50 titles of a category queued for the workers, 64 by default
+ *   * RANKING_WINDOW_DAYS: pages are ranked by their views of as many last days, 365 by default
+ *   * PAGEVIEWS_PATH: path of the daily views of the pages, only later days are requested, ./wiki.pageviews.bin by default
+ *   * RATE_LIMIT_&lt;host&gt;: requests per second to the host, e.g., -DRATE_LIMIT_wikimedia.org=50 (see {@link RateLimiter})
+ *   * WIKI_BASEURL, WIKIMEDIA_BASEURL: base URLs of the wiki projects and of the REST API (see {@link WikiUrls})
  *
  * Examples of catalogs to fetch:
  *   * https://en.wikipedia.org/wiki/List_of_Spanish-language_authors
@@ -47,11 +94,17 @@ public class WikiCatalogExport {
 
     public static void main(String[] args) throws IOException {
         WikiCatalog wikiCatalog = new WikiCatalog();
+        String exportPath = getProperty("PATH_TO_EXPORT", "wiki.pages.csv");
+        if (hasProperty("INCREMENTAL")) {
+            wikiCatalog.loadPreviousExport(exportPath, Integer.getInteger("MAX_AGE_DAYS", 30));
+        }
         Predicate<Element> filterOutPredicate = el -> {
             String link = el.attr("href").toLowerCase();
             return !link.contains("list_of") && !link.contains("russian_") && !link.contains("literature");
         };
-        if (hasProperty("LIST_TO_EXTRACT")) {
+        if (hasProperty("WIKIDATA_CSV")) {
+            wikiCatalog.updateCatalogFromWikidata("en.wikipedia.org", getProperty("WIKIDATA_CATEGORY", "Books"), getProperty("WIKIDATA_CSV"));
+        } else if (hasProperty("LIST_TO_EXTRACT")) {
             String category = getProperty("LIST_TO_EXTRACT");
             String cssQuery = getProperty("EXTRACT_CSS_PATH", "div#mw-content-text > ul > li > a:first-child");
             wikiCatalog.updateCatalog("en.wikipedia.org", category, cssQuery, filterOutPredicate);
@@ -64,7 +117,13 @@ public class WikiCatalogExport {
             wikiCatalog.updateCatalog("en.wikipedia.org", "List_of_French-language_authors",  "div#mw-content-text > ul > li > a:first-child", filterOutPredicate);
         }
 
-        wikiCatalog.exportToFile(getProperty("PATH_TO_EXPORT", "wiki.pages.csv"));
+        wikiCatalog.exportToFile(exportPath);
+        WikiPageStats.saveViews();
+        wikiCatalog.exportToRankedFile(getProperty("RANKED_CATALOG_PATH", "wiki.pages.bin"));
+
+        Map<String, String> languages = new HashMap<>();
+        TelegramBotMessageSender.AVAILABLE_CATEGORIES.forEach((language, category) -> languages.put(category, language));
+        wikiCatalog.exportLangLinks(getProperty("LANGLINKS_PATH", "wiki.langlinks.csv"), languages);
     }
 
 
@@ -75,33 +134,212 @@ public class WikiCatalogExport {
     @Data
     public static class WikiCatalog {
         private static final Logger log = LogManager.getLogger(WikiCatalog.class);
+        /** MediaWiki API limit on the number of titles per query for regular clients. */
+        static final int MAX_TITLES_PER_QUERY = 50;
+        /** Batches of titles in flight per category */
+        private static final int MAX_PENDING_BATCHES = Integer.getInteger("EXPORT_PENDING_BATCHES", 64);
+        private static final int MAX_REDIRECT_HOPS = 3;
+        private static final ExecutorService workers = newWorkerPool(Integer.getInteger("EXPORT_THREADS", 8));
+        private static final Metrics.Histogram canoniseLatency = Metrics.histogram("wiki_canonise_duration_seconds", "Time of resolving a batch of titles");
+        private static final Metrics.Counter canonicalTitles = canonisedTitles("canonical");
+        private static final Metrics.Counter missingTitles = canonisedTitles("missing");
+        private static final Metrics.Counter failedTitles = canonisedTitles("failed");
 
         List<WikiPage> pages = new ArrayList<>();
 
+        /** Pages that are still being fetched by the workers, in the order they are to be exported. */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private final List<Future<WikiPage>> pendingPages = new ArrayList<>();
+
+        /** Pages of the previous export by category, in the order of the previous export. */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private final Map<String, List<WikiPage>> previousPages = new LinkedHashMap<>();
+
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private final Set<String> updatedCategories = new HashSet<>();
+
+        /** Previous pages updated on or after this date are carried over without fetching them again. */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private LocalDate freshSince = LocalDate.MAX;
+
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private LocalDate previousExportDate;
+
+        /**
+         * Schedules the pages of the category to be fetched concurrently. Retrieved pages are appended to the catalog
+         * in the order of the category list once {@link #exportToFile(String)} is called.
+         */
         public void updateCatalog(String project, String category, String cssQuery, Predicate<Element> filterOutPredicate)  {
-            List<WikiPage> wikiPages = retrieveCatalog(project, category, cssQuery, filterOutPredicate);
-            pages.addAll(wikiPages);
+            pendingPages.addAll(submitCatalog(project, category, cssQuery, filterOutPredicate, freshPages(category)));
+            updatedCategories.add(category);
+        }
+
+        /**
+         * @return pages of the previous export of the category that are carried over, by id
+         */
+        private Map<String, WikiPage> freshPages(String category) {
+            Map<String, WikiPage> freshPages = new HashMap<>();
+            for (WikiPage page : previousPages.getOrDefault(category, emptyList())) {
+                if (page.getUpdated() == null)
+                    page.setUpdated(previousExportDate);
+                if (!page.getUpdated().isBefore(freshSince))
+                    freshPages.putIfAbsent(page.getId(), page);
+            }
+            return freshPages;
+        }
+
+        /**
+         * Loads the previous export for an incremental refresh: pages of an updated category that are younger
+         * than the max age are carried over, the others are fetched again. Pages without an update date are
+         * as old as the export file.
+         */
+        public void loadPreviousExport(String filePath, int maxAgeDays) {
+            Path path = Paths.get(filePath);
+            if (!Files.exists(path)) {
+                log.info("No previous export to refresh: {}", filePath);
+                return;
+            }
+            try {
+                previousExportDate = Instant.ofEpochMilli(Files.getLastModifiedTime(path).toMillis()).atZone(ZoneId.systemDefault()).toLocalDate();
+                for (WikiPage page : readFromFile(path)) {
+                    previousPages.computeIfAbsent(page.getCategory(), category -> new ArrayList<>()).add(page);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read previous export: " + filePath, e);
+            }
+            freshSince = LocalDate.now().minusDays(maxAgeDays);
+            log.info("Loaded {} pages of the previous export, pages updated before {} are fetched again", previousPages.values().stream().mapToInt(List::size).sum(), freshSince);
         }
 
+        /**
+         * Streams the catalog to a temporary file and swaps it with the export file. Updated categories replace
+         * their pages of the previous export unless no page of them was retrieved; other categories of the previous
+         * export are kept as they are.
+         */
         public void exportToFile(String filePath) {
-            List<String> wikiPages = pages.stream().map(WikiPage::toString).collect(toList());
+            pages.addAll(awaitPages(pendingPages));
+            pendingPages.clear();
+            List<WikiPage> wikiPages = mergeWithPreviousPages();
+            pages = wikiPages;
             log.info("Export {} wiki pages.", wikiPages.size());
+            Path path = Paths.get(filePath).toAbsolutePath();
+            Path tempPath = null;
+            try {
+                tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(tempPath)) {
+                    for (WikiPage page : wikiPages) {
+                        writer.write(page.toString());
+                        writer.newLine();
+                    }
+                }
+                Files.move(tempPath, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(tempPath);
+                throw new RuntimeException("Could not export wiki-pages to file: " + filePath, e);
+            }
+        }
+
+        private static void deleteQuietly(Path path) {
+            if (path == null)
+                return;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete {}: {}", path, e.toString());
+            }
+        }
+
+        /**
+         * Compiles the exported pages into the memory-mapped {@link RankedCatalog} format read by the bot.
+         */
+        public void exportToRankedFile(String filePath) {
+            try {
+                RankedCatalog.write(Paths.get(filePath), pages);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not export ranked catalog to file: " + filePath, e);
+            }
+        }
+
+        /**
+         * Resolves the links of the pages of every category to the language of the category and stores them with the
+         * links of the previous export. Pages that were fetched again are resolved again, carried over pages keep
+         * their links.
+         *
+         * @param languages language per category, categories without a language are not resolved
+         */
+        public void exportLangLinks(String filePath, Map<String, String> languages) {
+            Path path = Paths.get(filePath);
             try {
-                Files.write(Paths.get(filePath), wikiPages);
+                LangLinks langLinks = LangLinks.load(path);
+                langLinks.retain(pages.stream().map(WikiPage::getId).collect(toSet()));
+                LocalDate today = LocalDate.now();
+                Map<String, List<WikiPage>> pagesByCategory = pages.stream().
+                        collect(groupingBy(WikiPage::getCategory, LinkedHashMap::new, toList()));
+                pagesByCategory.forEach((category, categoryPages) -> {
+                    String language = languages.get(category);
+                    if (language == null)
+                        return;
+                    categoryPages.stream().
+                            filter(page -> !page.getProject().startsWith(language + ".")).
+                            filter(page -> today.equals(page.getUpdated()) || !langLinks.isResolved(page.getId(), language)).
+                            collect(groupingBy(WikiPage::getProject)).
+                            forEach((project, unresolved) -> {
+                                log.info("Resolve links to '{}' of {} pages of '{}'", language, unresolved.size(), category);
+                                langLinks.resolve(project, unresolved, language);
+                            });
+                });
+                langLinks.write(path);
             } catch (IOException e) {
-                throw new RuntimeException("Could not export wiki-pages to file: " + filePath);
+                throw new RuntimeException("Could not export language links to file: " + filePath, e);
+            }
+        }
+
+        private List<WikiPage> mergeWithPreviousPages() {
+            if (previousPages.isEmpty())
+                return pages;
+            Map<String, List<WikiPage>> pagesByCategory = pages.stream().
+                    collect(groupingBy(WikiPage::getCategory, LinkedHashMap::new, toList()));
+            List<WikiPage> merged = new ArrayList<>();
+            previousPages.forEach((category, previous) -> {
+                List<WikiPage> updated = pagesByCategory.getOrDefault(category, emptyList());
+                if (updatedCategories.contains(category) && !updated.isEmpty()) {
+                    merged.addAll(updated);
+                } else {
+                    // an update without pages, e.g., of a list whose layout changed, does not wipe out the category
+                    if (updatedCategories.contains(category))
+                        log.warn("No pages of '{}' were retrieved, the {} pages of the previous export are kept", category, previous.size());
+                    merged.addAll(previous);
+                }
+                pagesByCategory.remove(category);
+            });
+            pagesByCategory.values().forEach(merged::addAll);
+            return merged;
+        }
+
+        public static List<WikiPage> readFromFile(Path path) throws IOException {
+            try (Stream<String> lines = Files.lines(path)) {
+                return lines.map(WikiPage::fromString).collect(toList());
             }
         }
 
         public static List<WikiPage> retrieveCatalog(String project, String category, String cssQuery, Predicate<Element> filterOutPredicate)  {
+            return awaitPages(submitCatalog(project, category, cssQuery, filterOutPredicate, emptyMap()));
+        }
+
+        private static List<Future<WikiPage>> submitCatalog(String project, String category, String cssQuery, Predicate<Element> filterOutPredicate,
+                                                            Map<String, WikiPage> freshPages)  {
             log.info("Retrieve wiki-page catalog '{}' within the project '{}' by applying css path rule: {}", category, project, cssQuery);
-            List<WikiPage> pages = new ArrayList<>();
 
             // select elements for wiki project under the given category
-            String wikiCategoryPageUrl = "https://" + project + "/wiki/" + category;
+            String wikiCategoryPageUrl = WikiUrls.page(project, category);
             Document doc;
             try {
-                doc = Jsoup.connect(wikiCategoryPageUrl).get();
+                doc = Jsoup.parse(HttpUtils.getResource(wikiCategoryPageUrl), wikiCategoryPageUrl);
             } catch (IOException e) {
                 throw new RuntimeException("Could not retrieve catalog from: " + wikiCategoryPageUrl, e);
             }
@@ -111,57 +349,229 @@ public class WikiCatalogExport {
             List<Element> filteredElements = elements.stream().filter(filterOutPredicate).collect(toList());
             log.info("Retrieved[{}] - filtered-out[{}] = {} wiki-links from wiki-category url: {}", elements.size(), (elements.size()-filteredElements.size()), filteredElements.size(), wikiCategoryPageUrl);
             if (log.isDebugEnabled()) {
-                filteredElements.stream().map(el -> "https://" + project + el.attr("href")).
+                filteredElements.stream().map(el -> WikiUrls.project(project) + el.attr("href")).
                         forEach(url -> { log.debug("Page: {}", url); });
             }
 
-            // iterate over the list
-            filteredElements.stream().forEach(element -> {
-                String title = canoniseTitle(element.attr("title"), project); //or use @title
-                if (title == null)
-                    return; //ignore wiki pages w/o title
-                String id = title.replaceAll(" ", "_");
-                String url = "https://" + project + "/wiki/" + id;
-                WikiPage wp = WikiPage.builder().
-                        project(project).
-                        category(category).
-                        url(url).
-                        id(id).
-                        title(title).
-                        views(WikiPageStats.retrieveWikiPageStats(id)).
-                        build();
-
-                pages.add(wp);
-            });
+            Submission submission = new Submission(project, category, freshPages);
+            for (Element element : filteredElements) {
+                submission.add(element.attr("title")); //or use @title
+            }
+            return submission.finish();
+        }
+
+        /**
+         * Schedules the pages of the titles of a Wikidata query result, e.g., of bin/fetch.all.books.sh, to be
+         * fetched concurrently (see {@link WikidataCsvSource}). The result is streamed from the file or the URL, so
+         * only the pages and the ids of the rows read so far are kept in memory.
+         */
+        public void updateCatalogFromWikidata(String project, String category, String source) {
+            log.info("Retrieve wiki-page catalog '{}' within the project '{}' from Wikidata query result: {}", category, project, source);
+            Submission submission = new Submission(project, category, freshPages(category));
+            try {
+                WikidataCsvSource.fromProperties(project).forEachTitle(source, submission::add);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read Wikidata query result: " + source, e);
+            }
+            pendingPages.addAll(submission.finish());
+            updatedCategories.add(category);
+        }
+
+        /**
+         * Carries over fresh pages, canonises the other titles in batches and fetches the stats of their pages
+         * concurrently; the order of the futures is the order of the titles. At most {@link #MAX_PENDING_BATCHES}
+         * batches are in flight, so a long source of titles is not read ahead of the workers.
+         */
+        private static class Submission {
+            private final String project;
+            private final String category;
+            private final Map<String, WikiPage> freshPages;
+            private final List<Future<WikiPage>> futures = new ArrayList<>();
+            private final Deque<CompletableFuture<?>> pendingBatches = new ArrayDeque<>();
+            private List<String> titles = new ArrayList<>();
+            private List<Integer> positions = new ArrayList<>();
+            private int carried;
+
+            Submission(String project, String category, Map<String, WikiPage> freshPages) {
+                this.project = project;
+                this.category = category;
+                this.freshPages = freshPages;
+            }
+
+            void add(String title) {
+                WikiPage freshPage = freshPages.get(title.replaceAll(" ", "_"));
+                if (freshPage != null) {
+                    futures.add(completedFuture(freshPage));
+                    carried++;
+                    return;
+                }
+                positions.add(futures.size());
+                titles.add(title);
+                futures.add(null);
+                if (titles.size() == MAX_TITLES_PER_QUERY) {
+                    submitBatch();
+                }
+            }
+
+            List<Future<WikiPage>> finish() {
+                if (!titles.isEmpty())
+                    submitBatch();
+                if (!freshPages.isEmpty())
+                    log.info("Carried over {} of {} pages of the previous export of '{}'", carried, futures.size(), category);
+                return futures;
+            }
+
+            private void submitBatch() {
+                while (pendingBatches.size() >= MAX_PENDING_BATCHES) {
+                    // failures are reported when the pages are awaited
+                    pendingBatches.removeFirst().handle((result, e) -> null).join();
+                }
+                List<String> batchTitles = titles;
+                CompletableFuture<Map<String, String>> canonicalTitles = supplyAsync(() -> canoniseTitles(batchTitles, project), workers);
+                CompletableFuture<?>[] batch = new CompletableFuture<?>[batchTitles.size()];
+                for (int i = 0; i < batchTitles.size(); i++) {
+                    String title = batchTitles.get(i);
+                    CompletableFuture<WikiPage> page = canonicalTitles.thenApplyAsync(canonical -> {
+                        // redirected titles may still resolve to a fresh page
+                        String canonicalTitle = canonical.get(title);
+                        WikiPage freshPage = canonicalTitle == null ? null : freshPages.get(canonicalTitle.replaceAll(" ", "_"));
+                        return freshPage != null ? freshPage : retrievePage(project, category, canonicalTitle);
+                    }, workers);
+                    futures.set(positions.get(i), page);
+                    batch[i] = page;
+                }
+                pendingBatches.addLast(CompletableFuture.allOf(batch));
+                titles = new ArrayList<>();
+                positions = new ArrayList<>();
+            }
+        }
 
+        private static WikiPage retrievePage(String project, String category, String title) {
+            if (title == null)
+                return null; //ignore wiki pages w/o title
+            String id = title.replaceAll(" ", "_");
+            String url = WikiUrls.page(project, id);
+            return WikiPage.builder().
+                    project(project).
+                    category(category).
+                    url(url).
+                    id(id).
+                    title(title).
+                    views(WikiPageStats.retrieveWikiPageStats(id)).
+                    updated(LocalDate.now()).
+                    build();
+        }
+
+        private static List<WikiPage> awaitPages(List<Future<WikiPage>> futures) {
+            List<WikiPage> pages = new ArrayList<>(futures.size());
+            for (Future<WikiPage> future : futures) {
+                WikiPage page;
+                try {
+                    page = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for wiki-pages", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+                if (page != null)
+                    pages.add(page);
+            }
             return pages;
         }
 
-        private static String canoniseTitle(String title, String project) {
+        private static ExecutorService newWorkerPool(int threads) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "wiki-export-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Resolves normalisations and redirects of up to {@link #MAX_TITLES_PER_QUERY} titles with a single query.
+         * A batch whose query fails is split in halves and retried, so that one bad title does not lose the others.
+         * Titles of pages that do not exist, or that could not be resolved, are mapped to null.
+         */
+        static Map<String, String> canoniseTitles(List<String> titles, String project) {
+            long start = System.nanoTime();
+            Map<String, String> canonicalTitles = new HashMap<>();
+            // links without a title have no page
+            titles.stream().filter(String::isEmpty).forEach(title -> canonicalTitles.put(title, null));
+            List<String> queried = titles.stream().filter(title -> !title.isEmpty()).collect(toList());
+            if (!queried.isEmpty())
+                canoniseBatch(queried, project, canonicalTitles);
+            canoniseLatency.observeSince(start);
+            return canonicalTitles;
+        }
+
+        private static void canoniseBatch(List<String> queried, String project, Map<String, String> canonicalTitles) {
             try {
-                String encodedURL = new URI("https", project, "/w/api.php", "action=query&titles=" + title + "&redirects&format=json", null).toString();
-                JSONObject jsonObject = (JSONObject) HttpUtils.getJSONResource(encodedURL);
-                JSONObject queryResult = (JSONObject) jsonObject.get("query");
-                if (((JSONObject)queryResult.get("pages")).get("-1") != null) {
-                    throw new IllegalArgumentException(format("Title[%s] is not found for project: %s", title, project));
+                canonise(queried, project, canonicalTitles);
+            } catch (Exception e) {
+                if (queried.size() == 1) {
+                    log.error(format("Could not canonise title[%s] for project: %s", queried.get(0), project), e);
+                    canonicalTitles.put(queried.get(0), null);
+                    failedTitles.increment();
+                    return;
+                }
+                log.warn(format("Could not canonise %d titles for project: %s, retrying them in halves: %s", queried.size(), project, e));
+                int half = queried.size() / 2;
+                canoniseBatch(queried.subList(0, half), project, canonicalTitles);
+                canoniseBatch(queried.subList(half, queried.size()), project, canonicalTitles);
+            }
+        }
+
+        private static void canonise(List<String> queried, String project, Map<String, String> canonicalTitles) throws IOException, ParseException {
+            String url = WikiUrls.api(project, "action=query&redirects&format=json&titles=") + URLEncoder.encode(String.join("|", queried), "UTF-8");
+            JSONObject jsonObject = (JSONObject) HttpUtils.getJSONResource(url);
+            JSONObject queryResult = (JSONObject) jsonObject.get("query");
+            Map<String, String> normalized = fromToMapping(queryResult.get("normalized"));
+            Map<String, String> redirects = fromToMapping(queryResult.get("redirects"));
+            Set<String> missing = new HashSet<>();
+            for (Object pageEntry : ((JSONObject) queryResult.get("pages")).entrySet()) {
+                Map.Entry<?, ?> page = (Map.Entry<?, ?>) pageEntry;
+                JSONObject pageObject = (JSONObject) page.getValue();
+                if (String.valueOf(page.getKey()).startsWith("-") || pageObject.containsKey("missing") || pageObject.containsKey("invalid")) {
+                    missing.add(String.valueOf(pageObject.get("title")));
+                }
+            }
+            for (String title : queried) {
+                String canonical = normalized.getOrDefault(title, title);
+                for (int hops = 0; redirects.containsKey(canonical) && hops < MAX_REDIRECT_HOPS; hops++) {
+                    canonical = redirects.get(canonical);
                 }
-                Object redirectObject = queryResult.get("redirects");
-                if (redirectObject instanceof JSONArray) {
-                    for (Object o : ((JSONArray) redirectObject)) {
-                        if (o instanceof JSONObject) {
-                            Object toTitle = ((JSONObject) o).get("to");
-                            if (!(toTitle instanceof String)) {
-                                throw new IllegalArgumentException("'pages/redirect[0]/to is not recognised as string: " + queryResult);
-                            }
-                            return (String)toTitle;
+                if (missing.contains(canonical)) {
+                    log.error(format("Title[%s] is not found for project: %s", title, project));
+                    canonical = null;
+                    missingTitles.increment();
+                } else {
+                    WikiCatalog.canonicalTitles.increment();
+                }
+                canonicalTitles.put(title, canonical);
+            }
+        }
+
+        private static Metrics.Counter canonisedTitles(String result) {
+            return Metrics.counter("wiki_canonised_titles_total", "Titles by whether they resolved to a page", "result", result);
+        }
+
+        private static Map<String, String> fromToMapping(Object mappingObject) {
+            Map<String, String> mapping = new HashMap<>();
+            if (mappingObject instanceof JSONArray) {
+                for (Object o : ((JSONArray) mappingObject)) {
+                    if (o instanceof JSONObject) {
+                        Object fromTitle = ((JSONObject) o).get("from");
+                        Object toTitle = ((JSONObject) o).get("to");
+                        if (!(fromTitle instanceof String) || !(toTitle instanceof String)) {
+                            throw new IllegalArgumentException("'from/to' are not recognised as strings: " + o);
                         }
+                        mapping.put((String) fromTitle, (String) toTitle);
                     }
                 }
-            } catch (Exception e) {
-                log.error(e);
-                return null;
             }
-            return title;
+            return mapping;
         }
     }
 
@@ -178,6 +588,8 @@ public class WikiCatalogExport {
         private String id;
         private String title;
         private Integer views;
+        /** Date of the last update of the views, optional trailing column */
+        private LocalDate updated;
 
         public static String header() {
             return "url" + '|'  + "id" + '|' + "title" + '|' + "views";
@@ -185,34 +597,52 @@ public class WikiCatalogExport {
 
         @Override
         public String toString() {
-            Assert.assertFalse( "Project is incorrect: " + category, category == null || category.contains("|"));
-            Assert.assertFalse("Category is incorrect: " + project, project == null || project.contains("|"));
-            Assert.assertFalse(     "Url is incorrect: " + url, url == null || url.contains("|"));
-            Assert.assertFalse(      "Id is incorrect: " + id, id == null || id.contains("|"));
-            Assert.assertFalse(   "Title is incorrect: " + title, title == null || title.contains("|"));
-            Assert.assertFalse("Views is incorrect: " + views, views == null);
+            checkField("Project", project);
+            checkField("Category", category);
+            checkField("Url", url);
+            checkField("Id", id);
+            checkField("Title", title);
+            if (views == null)
+                throw new IllegalStateException("Views is incorrect: " + views);
             return  project + '|'  +
                     category + '|' +
                     url + '|' +
                     id + '|' +
                     title + '|' +
-                    views;
+                    views +
+                    (updated == null ? "" : "|" + updated);
         }
 
         public static WikiPage fromString(String line) {
             String[] tokens = StringUtils.split(line, '|');
-            Assert.assertEquals("Line has " + tokens.length + " while 6 are expected: " + line, 6, tokens.length);
+            if (tokens.length != 6 && tokens.length != 7)
+                throw new IllegalArgumentException("Line has " + tokens.length + " while 6 or 7 are expected: " + line);
             try {
                 Integer views = Integer.parseInt(tokens[5]);
-                return WikiPage.builder().project(tokens[0]).category(tokens[1]).url(tokens[2]).id(tokens[3]).title(tokens[4]).views(views).build();
+                LocalDate updated = tokens.length == 7 ? LocalDate.parse(tokens[6]) : null;
+                return WikiPage.builder().project(tokens[0]).category(tokens[1]).url(tokens[2]).id(tokens[3]).title(tokens[4]).views(views).updated(updated).build();
             } catch (NumberFormatException e) {
                 throw new RuntimeException("Number of views '" + tokens[5] + "' is not integer: " + line, e);
             }
         }
 
+        private static void checkField(String name, String value) {
+            if (value == null || value.contains("|"))
+                throw new IllegalStateException(name + " is incorrect: " + value);
+        }
+
+        /**
+         * Pages with more views first, pages with the same number of views by id, so that no page is lost or
+         * ranked differently between runs.
+         */
+        public static final Comparator<WikiPage> RANKING = Comparator.comparing(WikiPage::getViews).reversed().thenComparing(WikiPage::getId);
+
+        /**
+         * Natural order is ascending rank, the highest ranked page is the greatest.
+         */
         @Override
         public int compareTo(WikiPage another) {
-            return views.compareTo(another.views);
+            return RANKING.compare(another, this);
         }
     }
 
@@ -222,65 +652,209 @@ public class WikiCatalogExport {
      */
     public static class WikiPageStats {
         private static final Logger log = getLogger(WikiPageStats.class);
-        public static final int MAX_ERROR_RESOLUTION_ATTEMPTS = 3;
-        private static String fromDate = "20150904";
-        private static String toDate = "20160903";
+        /** Views of the last days that rank the pages, the store keeps no older days */
+        private static final int RANKING_WINDOW_DAYS = Integer.getInteger("RANKING_WINDOW_DAYS", 365);
+        private static final Path PAGEVIEWS_PATH = Paths.get(getProperty("PAGEVIEWS_PATH", "wiki.pageviews.bin"));
+        private static final DateTimeFormatter PAGEVIEWS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+        private static final Metrics.Histogram statsLatency = Metrics.histogram("wiki_page_stats_duration_seconds", "Time of updating and summing up the views of a page");
+        private static final Metrics.Counter fetchedStats = pageStats("fetched");
+        private static final Metrics.Counter storedStats = pageStats("stored");
+        private static final Metrics.Counter failedStats = pageStats("failed");
+        private static final Metrics.Counter fetchedDays = Metrics.counter("wiki_page_stats_days_fetched_total", "Days of page views requested from the pageviews API");
+        private static PageViewStore store;
 
+        /**
+         * @return views of the page within the ranking window up to yesterday, only days after the last stored day are requested
+         */
         public static Integer retrieveWikiPageStats(String pageId) {
+            long start = System.nanoTime();
+            // daily views are complete once the day is over in UTC
+            LocalDate toDate = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+            LocalDate windowStart = toDate.minusDays(RANKING_WINDOW_DAYS - 1);
             try {
-                Object resultObject = requestPageStats(pageId);
-                log.debug(resultObject);
-                Integer views = calculateTotalNumberOfViews(resultObject);
-                if (views == 0) {
-                    int attempts = 0;
-                    while (resultObject instanceof JSONObject && ((JSONObject) resultObject).containsKey("type") && attempts< MAX_ERROR_RESOLUTION_ATTEMPTS) {
-                        Thread.sleep(1000); // Give server a break
-                        log.debug("Re-executing request for [{}] because of an error: {}", pageId, resultObject);
-                        resultObject = requestPageStats(pageId);
-                        views = calculateTotalNumberOfViews(resultObject);
-                        attempts++;
-                    }
-                    if (views == 0) {
-                        log.warn("Zero views according to the response: {}", resultObject);
+                PageViewStore store = store();
+                LocalDate lastDay = store.lastDay(pageId);
+                LocalDate fromDate = lastDay == null || lastDay.isBefore(windowStart) ? windowStart : lastDay.plusDays(1);
+                if (!fromDate.isAfter(toDate)) {
+                    // throttled and failed requests are retried by HttpUtils
+                    PageViews pageViews = requestPageStats(pageId, fromDate, toDate);
+                    fetchedDays.add(ChronoUnit.DAYS.between(fromDate, toDate) + 1);
+                    log.debug(pageViews.response);
+                    if (pageViews.error && !pageViews.isNotFound()) {
+                        // the days are requested again by the next run
+                        log.warn("Could not update views of [{}] through [{}, {}]: {}", pageId, fromDate, toDate, pageViews.response);
+                        failedStats.increment();
+                    } else {
+                        fetchedStats.increment();
+                        // not found: the page has no views within the days, nothing is stored and they are requested again
+                        store.update(pageId, fromDate, pageViews.days, pageViews.dailyViews, pageViews.dayCount, windowStart);
                     }
+                } else {
+                    storedStats.increment();
                 }
-                log.info("Number of views for page [{}] through [{}, {}]: {}", pageId, fromDate, toDate, views);
-                return views;
+                long views = store.views(pageId, windowStart, toDate);
+                if (views == 0) {
+                    log.warn("Zero views of [{}] through [{}, {}]", pageId, windowStart, toDate);
+                }
+                log.info("Number of views for page [{}] through [{}, {}]: {}", pageId, windowStart, toDate, views);
+                return Math.toIntExact(views);
             } catch (Exception e) {
+                failedStats.increment();
                 throw new RuntimeException("Could not retrieve stat for page #" + pageId, e);
+            } finally {
+                statsLatency.observeSince(start);
             }
         }
 
-        private static Integer calculateTotalNumberOfViews(Object resultObject) {
-            return filterTraverse(resultObject, jsonObject -> jsonObject.containsKey("views")).
-                                stream().map(jsonObject -> Integer.parseInt(valueOf(jsonObject.get("views")))).collect(summingInt(Integer::intValue));
+        private static Metrics.Counter pageStats(String result) {
+            return Metrics.counter("wiki_page_stats_total", "Pages by whether their views were fetched, only read from the store or failed", "result", result);
         }
 
-        private static Object requestPageStats(String pageId) throws IOException, ParseException {
-            String url = format("https://wikimedia.org/api/rest_v1/metrics/pageviews/per-article/en.wikipedia/all-access/user/%s/daily/%s00/%s00", pageId, fromDate, toDate);
-            return HttpUtils.getJSONResource(url);
+        /**
+         * Writes the daily views fetched so far to the store, so that the next run only requests the days after them.
+         */
+        public static synchronized void saveViews() {
+            if (store == null)
+                return;
+            try {
+                store.write(PAGEVIEWS_PATH);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not save page views to file: " + PAGEVIEWS_PATH, e);
+            }
+        }
+
+        private static synchronized PageViewStore store() throws IOException {
+            if (store == null)
+                store = PageViewStore.load(PAGEVIEWS_PATH);
+            return store;
         }
 
-        private static ArrayList<JSONObject> filterTraverse(Object jsonObject, Predicate<JSONObject> filter) {
-            ArrayList<JSONObject> returnedObjects = new ArrayList<>();
-            filterInternalTraverse(jsonObject, filter, returnedObjects);
-            return returnedObjects;
+        private static PageViews requestPageStats(String pageId, LocalDate fromDate, LocalDate toDate) throws IOException, ParseException {
+            // titles may contain characters of URLs, e.g., "?" of the titles of books, the id is a single path segment
+            String url = WikiUrls.wikimediaRest(format("/metrics/pageviews/per-article/en.wikipedia/all-access/user/%s/daily/%s00/%s00",
+                    URLEncoder.encode(pageId, "UTF-8").replace("+", "%20"), fromDate.format(PAGEVIEWS_DATE), toDate.format(PAGEVIEWS_DATE)));
+            HttpUtils.Response response = HttpUtils.get(url);
+            // a window without any views is a 404 with an error of type not_found
+            if (response.status != HttpStatus.SC_OK && response.status != HttpStatus.SC_NOT_FOUND)
+                throw new IOException("Unexpected response status " + response.status + " of " + url);
+            return PageViews.parse(response.body);
         }
 
-        private static void filterInternalTraverse(Object jsonObject, Predicate<JSONObject> filter, List<JSONObject> returnedObjects) {
-            if (jsonObject instanceof JSONObject) {
-                JSONObject obj = (JSONObject) jsonObject;
-                if (filter.test(obj)) {
-                    returnedObjects.add(obj);
+        /**
+         * Total and daily views of a pageviews response. The response is parsed as a stream of tokens that sums
+         * up every "views" value and collects the days of the items into primitive arrays, so no JSON tree is built
+         * for the daily items.
+         */
+        static class PageViews implements ContentHandler {
+            final String response;
+            long views;
+            /** Error responses of the REST API are objects with a top-level "type", e.g., "https://mediawiki.org/wiki/HyperSwitch/errors/not_found" */
+            boolean error;
+            String errorType;
+            /** epoch days and views of the daily items, the first dayCount entries are set */
+            int[] days = new int[32];
+            int[] dailyViews = new int[32];
+            int dayCount;
+
+            private int depth;
+            private String key;
+            private String itemTimestamp;
+            private long itemViews;
+
+            private PageViews(String response) {
+                this.response = response;
+            }
+
+            static PageViews parse(String response) throws ParseException {
+                PageViews pageViews = new PageViews(response);
+                try {
+                    new JSONParser().parse(new StringReader(response), pageViews);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read in-memory response", e);
                 }
-                for (Object key : obj.keySet()) {
-                    filterInternalTraverse(obj.get(key), filter, returnedObjects);
+                return pageViews;
+            }
+
+            @Override
+            public void startJSON() {
+            }
+
+            @Override
+            public void endJSON() {
+            }
+
+            @Override
+            public boolean startObject() {
+                depth++;
+                key = null;
+                return true;
+            }
+
+            @Override
+            public boolean endObject() {
+                if (depth == 2 && itemTimestamp != null) {
+                    addDay(itemTimestamp, itemViews);
                 }
-            } else if (jsonObject instanceof JSONArray) {
-                JSONArray array = (JSONArray) jsonObject;
-                for (Object object : array) {
-                    filterInternalTraverse(object, filter, returnedObjects);
+                itemTimestamp = null;
+                itemViews = 0;
+                depth--;
+                return true;
+            }
+
+            /** The error of a window without any views */
+            boolean isNotFound() {
+                return errorType != null && errorType.endsWith("/not_found");
+            }
+
+            private void addDay(String timestamp, long views) {
+                if (dayCount == days.length) {
+                    days = Arrays.copyOf(days, dayCount * 2);
+                    dailyViews = Arrays.copyOf(dailyViews, dayCount * 2);
+                }
+                // e.g., 2016090300
+                days[dayCount] = (int) LocalDate.parse(timestamp.substring(0, 8), PAGEVIEWS_DATE).toEpochDay();
+                dailyViews[dayCount] = Math.toIntExact(views);
+                dayCount++;
+            }
+
+            @Override
+            public boolean startObjectEntry(String key) {
+                this.key = key;
+                if (depth == 1 && "type".equals(key)) {
+                    error = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean endObjectEntry() {
+                key = null;
+                return true;
+            }
+
+            @Override
+            public boolean startArray() {
+                key = null;
+                return true;
+            }
+
+            @Override
+            public boolean endArray() {
+                return true;
+            }
+
+            @Override
+            public boolean primitive(Object value) {
+                if ("views".equals(key) && value != null) {
+                    long dayViews = value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+                    views += dayViews;
+                    itemViews = dayViews;
+                } else if ("timestamp".equals(key) && value != null) {
+                    itemTimestamp = value.toString();
+                } else if (depth == 1 && "type".equals(key) && value != null) {
+                    errorType = value.toString();
                 }
+                return true;
             }
         }
     }
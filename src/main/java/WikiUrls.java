@@ -0,0 +1,45 @@
+import static java.lang.System.getProperty;
+
+/**
+ * Base URLs of the wiki projects and of the Wikimedia REST API, so that the exporter can be pointed at a stand-in
+ * server, e.g., the fake server of the load test in the benchmarks module.
+ *
+ * Configuration with VM properties:
+ *   * WIKI_BASEURL: base URL of a project, "{project}" is replaced with the project, https://{project} by default
+ *   * WIKIMEDIA_BASEURL: base URL of the Wikimedia REST API, https://wikimedia.org by default
+ */
+public final class WikiUrls {
+    private static final String WIKI_BASEURL = getProperty("WIKI_BASEURL", "https://{project}");
+    private static final String WIKIMEDIA_BASEURL = getProperty("WIKIMEDIA_BASEURL", "https://wikimedia.org");
+
+    private WikiUrls() {
+    }
+
+    /**
+     * @return base URL of the project, e.g., https://en.wikipedia.org
+     */
+    public static String project(String project) {
+        return WIKI_BASEURL.replace("{project}", project);
+    }
+
+    /**
+     * @return URL of the page of the project, the id is the title with underscores
+     */
+    public static String page(String project, String id) {
+        return project(project) + "/wiki/" + id;
+    }
+
+    /**
+     * @return URL of the MediaWiki API of the project followed by the query
+     */
+    public static String api(String project, String query) {
+        return project(project) + "/w/api.php?" + query;
+    }
+
+    /**
+     * @return URL of the Wikimedia REST API followed by the path, e.g., "/metrics/pageviews/..."
+     */
+    public static String wikimediaRest(String path) {
+        return WIKIMEDIA_BASEURL + "/api/rest_v1" + path;
+    }
+}
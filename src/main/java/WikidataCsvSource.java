@@ -0,0 +1,186 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static java.lang.System.getProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Source of the titles of a catalog from the CSV result of a Wikidata SPARQL query, e.g., of bin/fetch.all.books.sh.
+ * The result is streamed record by record from a file, gzipped if its name ends with .gz, or from the URL of a
+ * SPARQL endpoint, so that a dump of millions of rows is never held in memory. Rows are deduplicated by their
+ * Wikidata item, only a set of the numeric ids is kept.
+ *
+ * The title of an item is the title of its Wikipedia article. Rows without an article of the project are skipped, a
+ * title or label is not necessarily the title of a page, unless the fallback to the title column is enabled; then an
+ * item without any article gets the title of its first row. The rows of an item are expected one after another, as
+ * the query service returns them; an item that comes again later keeps the title chosen first. Columns are found
+ * by the names of the header.
+ *
+ * Configuration with VM properties:
+ *   * WIKIDATA_ITEM_COLUMN: column of the item, e.g., http://www.wikidata.org/entity/Q571, "book" by default
+ *   * WIKIDATA_ARTICLE_COLUMN: column of the URL of the article of the item in the project, "article" by default
+ *   * WIKIDATA_TITLE_COLUMN: column of the title, used if a row has no article, "title" by default
+ *   * WIKIDATA_TITLE_FALLBACK: true to take the title of an item without an article from WIKIDATA_TITLE_COLUMN,
+ *     false by default
+ */
+public class WikidataCsvSource {
+    private static final Logger log = LogManager.getLogger(WikidataCsvSource.class);
+    private static final int LOG_EVERY_ROWS = 1_000_000;
+
+    private final String project;
+    private final String itemColumn;
+    private final String articleColumn;
+    private final String titleColumn;
+    private final boolean titleFallback;
+
+    public WikidataCsvSource(String project, String itemColumn, String articleColumn, String titleColumn, boolean titleFallback) {
+        this.project = project;
+        this.itemColumn = itemColumn;
+        this.articleColumn = articleColumn;
+        this.titleColumn = titleColumn;
+        this.titleFallback = titleFallback;
+    }
+
+    public static WikidataCsvSource fromProperties(String project) {
+        return new WikidataCsvSource(project,
+                getProperty("WIKIDATA_ITEM_COLUMN", "book"),
+                getProperty("WIKIDATA_ARTICLE_COLUMN", "article"),
+                getProperty("WIKIDATA_TITLE_COLUMN", "title"),
+                Boolean.getBoolean("WIKIDATA_TITLE_FALLBACK"));
+    }
+
+    /**
+     * Passes the title of every item of the result to the consumer once, in the order of the result. Rows without
+     * an item, rows without an article unless the title fallback is enabled and rows without a title are skipped.
+     *
+     * @param source path of the file or http(s) URL of the result
+     */
+    public void forEachTitle(String source, Consumer<String> consumer) throws IOException {
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            HttpUtils.readResource(source, "text/csv", content -> forEachTitle(content, consumer));
+        } else {
+            try (InputStream file = Files.newInputStream(Paths.get(source));
+                 InputStream in = source.endsWith(".gz") ? new GZIPInputStream(file, 64 * 1024) : file) {
+                forEachTitle(new InputStreamReader(in, UTF_8), consumer);
+            }
+        }
+    }
+
+    void forEachTitle(Reader content, Consumer<String> consumer) throws IOException {
+        CsvReader csv = new CsvReader(content);
+        String[] header = csv.readRecord();
+        if (header == null)
+            throw new IOException("Empty Wikidata query result");
+        int item = column(header, itemColumn);
+        int article = column(header, articleColumn);
+        int title = titleFallback ? column(header, titleColumn) : -1;
+        if (item < 0 || (article < 0 && title < 0))
+            throw new IOException("Wikidata query result has no column '" + itemColumn + "' and '" + articleColumn + "'" +
+                    (titleFallback ? " or '" + titleColumn + "'" : "") + ": " + Arrays.toString(header));
+
+        LongHashSet items = new LongHashSet(1 << 16);
+        long rows = 0;
+        long duplicates = 0;
+        long skipped = 0;
+        long withoutArticle = 0;
+        // the rows of an item follow each other, its title is chosen once all of them are read
+        long currentItem = -1;
+        String currentTitle = null;
+        boolean currentIsArticle = false;
+        for (String[] record = csv.readRecord(); record != null; record = csv.readRecord()) {
+            if (++rows % LOG_EVERY_ROWS == 0)
+                log.info("Read {} rows of Wikidata query result, {} items", rows, items.size());
+            long id = itemId(field(record, item));
+            String articleTitle = articleTitle(field(record, article));
+            if (articleTitle == null)
+                withoutArticle++;
+            String pageTitle = articleTitle != null ? articleTitle : field(record, title);
+            if (id < 0 || pageTitle == null || pageTitle.isEmpty()) {
+                skipped++;
+                continue;
+            }
+            if (id == currentItem) {
+                duplicates++;
+                if (!currentIsArticle && articleTitle != null) {
+                    currentTitle = articleTitle;
+                    currentIsArticle = true;
+                }
+                continue;
+            }
+            if (currentItem >= 0 && !accept(items, currentItem, currentTitle, consumer))
+                duplicates++;
+            currentItem = id;
+            currentTitle = pageTitle;
+            currentIsArticle = articleTitle != null;
+        }
+        if (currentItem >= 0 && !accept(items, currentItem, currentTitle, consumer))
+            duplicates++;
+        log.info("Read {} rows of Wikidata query result: {} items, {} duplicates, {} skipped", rows, items.size(), duplicates, skipped);
+        if (withoutArticle > 0)
+            log.info("{} rows have no article of {}{}", withoutArticle, project,
+                    titleFallback ? ", their titles are taken from '" + titleColumn + "'" : " and are skipped");
+    }
+
+    /**
+     * @return false if the item has been passed to the consumer before, its rows were not consecutive
+     */
+    private static boolean accept(LongHashSet items, long id, String title, Consumer<String> consumer) {
+        if (!items.add(id))
+            return false;
+        consumer.accept(title);
+        return true;
+    }
+
+    /**
+     * @return numeric id of an item, e.g., 571 of http://www.wikidata.org/entity/Q571 or of Q571, -1 if there is none
+     */
+    static long itemId(String item) {
+        if (item == null)
+            return -1;
+        int start = item.lastIndexOf('/') + 1;
+        if (start >= item.length() || item.charAt(start) != 'Q')
+            return -1;
+        try {
+            return Long.parseLong(item.substring(start + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return title of the article at the URL, e.g., "The Hobbit" of https://en.wikipedia.org/wiki/The_Hobbit, null if
+     * the URL is not an article of the project
+     */
+    String articleTitle(String url) {
+        if (url == null || url.isEmpty())
+            return null;
+        String prefix = "https://" + project + "/wiki/";
+        if (!url.startsWith(prefix))
+            return null;
+        try {
+            return URLDecoder.decode(url.substring(prefix.length()).replace("+", "%2B"), "UTF-8").replace('_', ' ');
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int column(String[] header, String name) {
+        return Arrays.asList(header).indexOf(name);
+    }
+
+    private static String field(String[] record, int column) {
+        return column < 0 || column >= record.length ? null : record[column];
+    }
+}
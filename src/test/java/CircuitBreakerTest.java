@@ -0,0 +1,65 @@
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws CircuitBreaker.CircuitOpenException {
+        CircuitBreaker breaker = new CircuitBreaker("wikimedia.org", 3, OPEN_MILLIS);
+        breaker.onFailure();
+        breaker.onFailure();
+        // a success resets the count
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.beforeRequest();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertRefused(breaker);
+    }
+
+    @Test
+    public void closesAfterASuccessfulTrial() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS);
+        breaker.beforeRequest();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        // a single trial request at a time
+        assertRefused(breaker);
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.beforeRequest();
+    }
+
+    @Test
+    public void opensAgainAfterAFailedTrial() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS);
+        breaker.beforeRequest();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertRefused(breaker);
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("wikimedia.org", 1, OPEN_MILLIS);
+        breaker.onFailure();
+        return breaker;
+    }
+
+    private static void assertRefused(CircuitBreaker breaker) {
+        try {
+            breaker.beforeRequest();
+            fail("Request let through the circuit in state " + breaker.state());
+        } catch (CircuitBreaker.CircuitOpenException expected) {
+        }
+    }
+}
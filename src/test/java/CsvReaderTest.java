@@ -0,0 +1,90 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CsvReaderTest {
+
+    @Test
+    public void readsPlainFields() throws IOException {
+        List<String[]> records = read("book,title,article\nQ1,The Hobbit,\n");
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"book", "title", "article"}, records.get(0));
+        assertArrayEquals(new String[]{"Q1", "The Hobbit", ""}, records.get(1));
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        List<String[]> records = read("\"a, b\",\"say \"\"hi\"\"\",\"\"\n");
+        assertArrayEquals(new String[]{"a, b", "say \"hi\"", ""}, records.get(0));
+    }
+
+    @Test
+    public void readsLineBreaksWithinQuotedFields() throws IOException {
+        List<String[]> records = read("Q1,\"first\nsecond\r\nthird\"\nQ2,x\n");
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"Q1", "first\nsecond\r\nthird"}, records.get(0));
+        assertArrayEquals(new String[]{"Q2", "x"}, records.get(1));
+    }
+
+    @Test
+    public void readsCrLfRecords() throws IOException {
+        List<String[]> records = read("a,b\r\n\"c\",d\r\n");
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"a", "b"}, records.get(0));
+        assertArrayEquals(new String[]{"c", "d"}, records.get(1));
+    }
+
+    @Test
+    public void readsLastRecordWithoutLineBreak() throws IOException {
+        List<String[]> records = read("a,b\n\"c\",");
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"c", ""}, records.get(1));
+    }
+
+    @Test
+    public void readsRecordsAcrossBufferRefills() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        char[] title = new char[1000];
+        Arrays.fill(title, 'x');
+        for (int i = 0; i < 200; i++) {
+            csv.append("Q").append(i).append(",\"").append(title).append(",\"\"\"\n");
+        }
+        List<String[]> records = read(csv.toString());
+        assertEquals(200, records.size());
+        assertArrayEquals(new String[]{"Q199", new String(title) + ",\""}, records.get(199));
+    }
+
+    @Test
+    public void endsWithNull() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(""));
+        assertNull(csv.readRecord());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCharactersAfterClosingQuote() throws IOException {
+        read("\"The Hobbit\"x,Q1\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnterminatedQuotedField() throws IOException {
+        read("Q1,\"The Hobbit\n");
+    }
+
+    private static List<String[]> read(String content) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CsvReader csv = new CsvReader(new StringReader(content))) {
+            for (String[] record = csv.readRecord(); record != null; record = csv.readRecord()) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,190 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeliverySchedulerTest {
+    private static final String EN = "List_of_English_writers";
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-17T08:30:00Z"), ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    /** Chats whose messages the server fails */
+    private final Set<String> failingChats = Collections.synchronizedSet(new HashSet<>());
+    private SentHistory history;
+    private SubscriberStore subscribers;
+    private DeliveryScheduler.Catalog catalog;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String form;
+            try (InputStream in = exchange.getRequestBody()) {
+                form = new String(readAll(in), UTF_8);
+            }
+            messages.add(form);
+            boolean failing = failingChats.contains(form.replaceAll(".*chat_id=([^&]*).*", "$1"));
+            byte[] body = ("{\"ok\":" + !failing + "}").getBytes(UTF_8);
+            exchange.sendResponseHeaders(failing ? 500 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        System.setProperty("BROADCAST_MAX_ATTEMPTS", "1");
+
+        Path root = folder.getRoot().toPath();
+        history = SentHistory.open(root.resolve("sent.history"), null);
+        subscribers = SubscriberStore.open(root.resolve("subscribers"));
+        // 10:30 in Amsterdam, 04:30 in New York
+        subscribers.subscribe(user(1, "09:00", "Europe/Amsterdam"));
+        subscribers.subscribe(user(2, "09:00", "America/New_York"));
+        subscribers.subscribe(user(3, "08:00", "UTC"));
+        RankedCatalog ranked = RankedCatalog.of(Arrays.asList(page("Jane_Austen", 1200), page("Charles_Dickens", 900)));
+        catalog = new DeliveryScheduler.Catalog(emptyList(), new LangLinks(),
+                new SelectionEngine(ranked, history, TelegramBotMessageSender.AVAILABLE_CATEGORIES));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty("BROADCAST_MAX_ATTEMPTS");
+        subscribers.close();
+        history.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void deliversToTheSubscribersWhoseTimeHasCome() throws IOException {
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            DeliveryScheduler scheduler = new DeliveryScheduler(history, subscribers, broadcaster, CLOCK);
+            scheduler.deliverDue(catalog);
+            assertEquals(2, messages.size());
+            assertTrue(history.isSent("1", EN, "Jane_Austen"));
+            assertFalse(history.isSent("2", EN, "Jane_Austen"));
+            assertTrue(history.isSent("3", EN, "Jane_Austen"));
+
+            // the next tick of the same day sends nothing
+            scheduler.deliverDue(catalog);
+            assertEquals(2, messages.size());
+        }
+    }
+
+    @Test
+    public void sendsNothingTwiceAfterARestart() throws IOException {
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            new DeliveryScheduler(history, subscribers, broadcaster, CLOCK).deliverDue(catalog);
+        }
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            new DeliveryScheduler(history, subscribers, broadcaster, CLOCK).deliverDue(catalog);
+        }
+        assertEquals(2, messages.size());
+        // the next page is skipped, not recorded
+        assertFalse(history.isSent("1", EN, "Charles_Dickens"));
+    }
+
+    @Test
+    public void recordsThePagesDeliveredBeforeARestart() throws IOException {
+        // the previous daemon stopped after the broadcast, before it recorded the pages
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            Map<Long, String> sent = new HashMap<>();
+            sent.put(1L, "https://en.wikipedia.org/wiki/Jane_Austen");
+            sent.put(3L, "https://en.wikipedia.org/wiki/Jane_Austen");
+            broadcaster.broadcast("2026-10-17", sent);
+        }
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            new DeliveryScheduler(history, subscribers, broadcaster, CLOCK).deliverDue(catalog);
+        }
+        assertEquals(2, messages.size());
+        assertTrue(history.isSent("1", EN, "Jane_Austen"));
+        assertTrue(history.isSent("3", EN, "Jane_Austen"));
+    }
+
+    @Test
+    public void triesFailedDeliveriesAgainOnTheNextTick() throws IOException {
+        failingChats.add("3");
+        try (TelegramBroadcaster broadcaster = broadcaster()) {
+            DeliveryScheduler scheduler = new DeliveryScheduler(history, subscribers, broadcaster, CLOCK);
+            scheduler.deliverDue(catalog);
+            assertEquals(2, messages.size());
+            assertFalse(history.isSent("3", EN, "Jane_Austen"));
+
+            failingChats.clear();
+            scheduler.deliverDue(catalog);
+            assertEquals(3, messages.size());
+            assertTrue(history.isSent("3", EN, "Jane_Austen"));
+            assertFalse(history.isSent("1", EN, "Charles_Dickens"));
+        }
+    }
+
+    @Test
+    public void waitsForAllTheFilesOfAnExport() {
+        FileTime csv = FileTime.fromMillis(1000);
+        FileTime compiled = FileTime.fromMillis(2000);
+        assertTrue(DeliveryScheduler.Catalog.isComplete(Arrays.asList(csv, compiled, FileTime.fromMillis(3000))));
+        assertTrue(DeliveryScheduler.Catalog.isComplete(Arrays.asList(csv, null, null)));
+        // the links of the previous export
+        assertFalse(DeliveryScheduler.Catalog.isComplete(Arrays.asList(csv, compiled, FileTime.fromMillis(1500))));
+        // the CSV of a new export that is not compiled yet
+        assertFalse(DeliveryScheduler.Catalog.isComplete(Arrays.asList(FileTime.fromMillis(4000), compiled, FileTime.fromMillis(3000))));
+    }
+
+    private TelegramBroadcaster broadcaster() {
+        return new TelegramBroadcaster("http://localhost:" + server.getAddress().getPort() + "/bot123:secret",
+                folder.getRoot().toPath().resolve("deliveries.log"));
+    }
+
+    private static TelegramWikiBot.TelegramUser user(long id, String deliveryTime, String timeZone) {
+        return TelegramWikiBot.TelegramUser.fromString(id + "|First|Last|en|" + deliveryTime + "|" + timeZone);
+    }
+
+    private static WikiCatalogExport.WikiPage page(String id, int views) {
+        return WikiCatalogExport.WikiPage.builder().
+                project("en.wikipedia.org").
+                category(EN).
+                url("https://en.wikipedia.org/wiki/" + id).
+                id(id).
+                title(id.replace('_', ' ')).
+                views(views).
+                build();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCacheTest {
+    private static final DateTimeFormatter PAGEVIEWS_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ttlDependsOnTheEndpoint() {
+        HttpCache cache = new HttpCache(folder.getRoot().toPath(), 1024 * 1024);
+        assertEquals(TimeUnit.DAYS.toMillis(1), cache.ttlMillis("https://en.wikipedia.org/w/api.php?action=query&titles=Faust"));
+        assertEquals(TimeUnit.HOURS.toMillis(1), cache.ttlMillis("https://en.wikipedia.org/wiki/List_of_English_writers"));
+        assertEquals(0, cache.ttlMillis("https://api.telegram.org/bot123/sendMessage"));
+        assertFalse(cache.isCacheable("https://api.telegram.org/bot123/sendMessage"));
+    }
+
+    @Test
+    public void pageviewsAreNotCached() {
+        HttpCache cache = new HttpCache(folder.getRoot().toPath(), 1024 * 1024);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String url = pageviews(today.minusDays(30), today.minusDays(2));
+        assertEquals(0, cache.ttlMillis(url));
+        assertFalse(cache.isCacheable(pageviews(today.minusDays(30), today.minusDays(1))));
+        cache.put(url, null, null, "{\"items\":[]}");
+        assertNull(cache.get(url));
+    }
+
+    @Test
+    public void keepsBodyAndValidators() throws IOException {
+        HttpCache cache = new HttpCache(folder.getRoot().toPath(), 1024 * 1024);
+        String url = "https://en.wikipedia.org/wiki/Faust";
+        assertNull(cache.get(url));
+        cache.put(url, "\"v1\"", "Sat, 17 Oct 2026 10:00:00 GMT", "<html>Faust \u00e9</html>");
+
+        HttpCache.Entry entry = new HttpCache(folder.getRoot().toPath(), 1024 * 1024).get(url);
+        assertNotNull(entry);
+        assertEquals("<html>Faust \u00e9</html>", entry.body);
+        assertEquals("\"v1\"", entry.etag);
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", entry.lastModified);
+        assertFalse(entry.isExpired());
+        assertTrue(entry.isRevalidatable());
+    }
+
+    @Test
+    public void doesNotStoreUncacheableResponses() throws IOException {
+        HttpCache cache = new HttpCache(folder.getRoot().toPath(), 1024 * 1024);
+        cache.put("https://api.telegram.org/bot123/getUpdates", null, null, "{}");
+        assertNull(cache.get("https://api.telegram.org/bot123/getUpdates"));
+    }
+
+    @Test
+    public void expiredEntriesAreRevalidatedOnlyWithValidators() {
+        long past = System.currentTimeMillis() - 1;
+        assertTrue(new HttpCache.Entry(past, null, null, "").isExpired());
+        assertFalse(new HttpCache.Entry(past, null, null, "").isRevalidatable());
+        assertTrue(new HttpCache.Entry(past, "\"v1\"", null, "").isRevalidatable());
+        assertTrue(new HttpCache.Entry(past, null, "Sat, 17 Oct 2026 10:00:00 GMT", "").isRevalidatable());
+        assertFalse(new HttpCache.Entry(System.currentTimeMillis() + 60000, null, null, "").isExpired());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        HttpCache cache = new HttpCache(directory, 1200);
+        char[] body = new char[400];
+        Arrays.fill(body, 'x');
+        cache.put("https://en.wikipedia.org/wiki/A", null, null, new String(body));
+        // the entry of A was used long ago
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile).forEach(HttpCacheTest::makeOld);
+        }
+        cache.put("https://en.wikipedia.org/wiki/B", null, null, new String(body));
+        cache.put("https://en.wikipedia.org/wiki/C", null, null, new String(body));
+
+        assertNull(cache.get("https://en.wikipedia.org/wiki/A"));
+        assertNotNull(cache.get("https://en.wikipedia.org/wiki/B"));
+        assertNotNull(cache.get("https://en.wikipedia.org/wiki/C"));
+    }
+
+    private static void makeOld(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(TimeUnit.DAYS.toMillis(1)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String pageviews(LocalDate from, LocalDate to) {
+        return "https://wikimedia.org/api/rest_v1/metrics/pageviews/per-article/en.wikipedia/all-access/user/Faust/daily/" +
+                from.format(PAGEVIEWS_DATE) + "00/" + to.format(PAGEVIEWS_DATE) + "00";
+    }
+}
@@ -0,0 +1,39 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class HttpUtilsTest {
+
+    @Test
+    public void redactsTheBotToken() {
+        assertEquals("https://api.telegram.org/bot<token>/sendMessage",
+                HttpUtils.redact("https://api.telegram.org/bot248586768:AAFY8ebEYjlyq0/sendMessage"));
+        assertEquals("http://localhost:8080/bot<token>/getUpdates?timeout=25&offset=3",
+                HttpUtils.redact("http://localhost:8080/bot123:secret/getUpdates?timeout=25&offset=3"));
+        assertEquals("https://en.wikipedia.org/wiki/Bottom", HttpUtils.redact("https://en.wikipedia.org/wiki/Bottom"));
+    }
+
+    @Test
+    public void failsWithoutTheBotToken() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            HttpUtils.getResource("http://localhost:" + server.getAddress().getPort() + "/bot123:secret/getMe");
+            fail("Missing resource read");
+        } catch (IOException e) {
+            assertFalse(e.getMessage(), e.getMessage().contains("secret"));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
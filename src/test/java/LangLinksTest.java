@@ -0,0 +1,63 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LangLinksTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsTheLinksOfTheFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("wiki.langlinks.csv");
+        Files.write(path, Arrays.asList(
+                "Faust|de|https://de.wikipedia.org/wiki/Faust",
+                "Faust|fr|",
+                "malformed line",
+                "Candide|fr|https://fr.wikipedia.org/wiki/Candide"), UTF_8);
+        LangLinks links = LangLinks.load(path);
+
+        assertEquals("https://de.wikipedia.org/wiki/Faust", links.url("Faust", "de"));
+        // a page without a link in the language is resolved, so that it is not queried again
+        assertNull(links.url("Faust", "fr"));
+        assertTrue(links.isResolved("Faust", "fr"));
+        assertFalse(links.isResolved("Faust", "ru"));
+        assertFalse(links.isResolved("Hamlet", "de"));
+        assertNull(links.url("Hamlet", "de"));
+    }
+
+    @Test
+    public void hasNoLinksWithoutAFile() throws IOException {
+        LangLinks links = LangLinks.load(folder.getRoot().toPath().resolve("wiki.langlinks.csv"));
+        assertFalse(links.isResolved("Faust", "de"));
+    }
+
+    @Test
+    public void writesTheRetainedLinks() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("wiki.langlinks.csv");
+        Files.write(path, Arrays.asList(
+                "Faust|de|https://de.wikipedia.org/wiki/Faust",
+                "Faust|fr|",
+                "Candide|fr|https://fr.wikipedia.org/wiki/Candide"), UTF_8);
+        LangLinks links = LangLinks.load(path);
+        links.retain(new HashSet<>(Arrays.asList("Faust", "Hamlet")));
+        links.write(path);
+
+        assertEquals(Arrays.asList("Faust|de|https://de.wikipedia.org/wiki/Faust", "Faust|fr|"), Files.readAllLines(path, UTF_8));
+        LangLinks reloaded = LangLinks.load(path);
+        assertTrue(reloaded.isResolved("Faust", "fr"));
+        assertFalse(reloaded.isResolved("Candide", "fr"));
+    }
+}
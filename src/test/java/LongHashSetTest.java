@@ -0,0 +1,67 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void keepsAllValuesAcrossRehashes() {
+        LongHashSet set = new LongHashSet(8);
+        for (long value = 1; value <= 10_000; value++) {
+            assertTrue(set.add(value * 31));
+        }
+        assertEquals(10_000, set.size());
+        for (long value = 1; value <= 10_000; value++) {
+            assertTrue(set.contains(value * 31));
+            assertFalse(set.add(value * 31));
+            assertFalse(set.contains(value * 31 + 1));
+        }
+        assertEquals(10_000, set.size());
+    }
+
+    @Test
+    public void keepsCollidingValuesAcrossRehashes() {
+        // multiples of the table sizes fall into the same slots before the mix
+        LongHashSet set = new LongHashSet();
+        for (long value = 1; value <= 1_000; value++) {
+            assertTrue(set.add(value << 32));
+            assertTrue(set.add(-value));
+        }
+        assertEquals(2_000, set.size());
+        for (long value = 1; value <= 1_000; value++) {
+            assertTrue(set.contains(value << 32));
+            assertTrue(set.contains(-value));
+        }
+    }
+
+    @Test
+    public void storesZeroApartFromTheFreeSlots() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+
+        for (long value = 1; value <= 100; value++) {
+            set.add(value);
+        }
+        assertTrue(set.contains(0));
+        assertEquals(101, set.size());
+    }
+
+    @Test
+    public void clearRemovesZeroAndValues() {
+        LongHashSet set = new LongHashSet();
+        set.add(0);
+        set.add(42);
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(42));
+        assertTrue(set.add(0));
+        assertTrue(set.add(42));
+    }
+}
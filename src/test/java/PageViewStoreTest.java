@@ -0,0 +1,86 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PageViewStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sumsTheViewsOfTheWindow() {
+        PageViewStore store = new PageViewStore();
+        // no views on the second day
+        update(store, "Faust", DAY, DAY, new int[]{0, 2}, new int[]{10, 30});
+
+        assertEquals(DAY.plusDays(2), store.lastDay("Faust"));
+        assertEquals(40, store.views("Faust", DAY, DAY.plusDays(2)));
+        assertEquals(30, store.views("Faust", DAY.plusDays(1), DAY.plusDays(5)));
+        assertEquals(10, store.views("Faust", DAY.minusDays(5), DAY));
+        assertEquals(0, store.views("Candide", DAY, DAY.plusDays(2)));
+        assertNull(store.lastDay("Candide"));
+    }
+
+    @Test
+    public void appendsTheMissingDaysAndDropsTheDaysBeforeTheWindow() {
+        PageViewStore store = new PageViewStore();
+        update(store, "Faust", DAY, DAY, new int[]{0, 1, 2}, new int[]{10, 20, 30});
+        update(store, "Faust", DAY.plusDays(3), DAY.plusDays(1), new int[]{3, 4}, new int[]{40, 50});
+
+        assertEquals(DAY.plusDays(4), store.lastDay("Faust"));
+        assertEquals(140, store.views("Faust", DAY, DAY.plusDays(4)));
+    }
+
+    @Test
+    public void leavesOutTheDaysAfterTheLastDayOfTheResponse() {
+        PageViewStore store = new PageViewStore();
+        update(store, "Faust", DAY, DAY, new int[]{0, 1}, new int[]{10, 20});
+        // the views of the last days are not counted yet
+        update(store, "Faust", DAY.plusDays(2), DAY, new int[]{2}, new int[]{30});
+        update(store, "Faust", DAY.plusDays(3), DAY, new int[0], new int[0]);
+        assertEquals(DAY.plusDays(2), store.lastDay("Faust"));
+
+        update(store, "Candide", DAY, DAY, new int[0], new int[0]);
+        assertNull(store.lastDay("Candide"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void reloadsTheWrittenViews() throws IOException {
+        PageViewStore store = new PageViewStore();
+        update(store, "Faust", DAY, DAY, new int[]{0, 1}, new int[]{10, 20});
+        update(store, "Candide", DAY, DAY, new int[]{0}, new int[]{5});
+        Path path = folder.getRoot().toPath().resolve("wiki.pageviews.bin");
+        store.write(path);
+
+        PageViewStore reloaded = PageViewStore.load(path);
+        assertEquals(2, reloaded.size());
+        assertEquals(30, reloaded.views("Faust", DAY, DAY.plusDays(1)));
+        assertEquals(5, reloaded.views("Candide", DAY, DAY));
+        assertEquals(DAY.plusDays(1), reloaded.lastDay("Faust"));
+    }
+
+    @Test
+    public void hasNoViewsWithoutAFile() throws IOException {
+        assertEquals(0, PageViewStore.load(folder.getRoot().toPath().resolve("wiki.pageviews.bin")).size());
+    }
+
+    /**
+     * @param offsets days of the views relative to {@link #DAY}
+     */
+    private static void update(PageViewStore store, String pageId, LocalDate from, LocalDate keepFrom, int[] offsets, int[] views) {
+        int[] days = new int[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            days[i] = (int) DAY.plusDays(offsets[i]).toEpochDay();
+        }
+        store.update(pageId, from, days, views, views.length, keepFrom);
+    }
+}
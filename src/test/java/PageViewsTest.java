@@ -0,0 +1,69 @@
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageViewsTest {
+
+    @Test
+    public void sumsTheViewsOfAllDays() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse("{\"items\":[" +
+                "{\"project\":\"en.wikipedia\",\"article\":\"Faust\",\"timestamp\":\"2026101500\",\"views\":120}," +
+                "{\"project\":\"en.wikipedia\",\"article\":\"Faust\",\"timestamp\":\"2026101600\",\"views\":80}]}");
+        assertEquals(200, pageViews.views);
+        assertFalse(pageViews.error);
+    }
+
+    @Test
+    public void ignoresViewsOutsideOfItemsAndNestedKeys() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse("{\"items\":[" +
+                "{\"article\":\"views\",\"views\":5,\"tags\":[\"views\"]}]}");
+        assertEquals(5, pageViews.views);
+    }
+
+    @Test
+    public void readsNoViewsOfAnEmptyResponse() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse("{\"items\":[]}");
+        assertEquals(0, pageViews.views);
+        assertFalse(pageViews.error);
+    }
+
+    @Test
+    public void recognisesErrorResponses() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse(
+                "{\"type\":\"https://mediawiki.org/wiki/HyperSwitch/errors/not_found\",\"title\":\"Not found.\"," +
+                        "\"detail\":\"The date(s) you used are valid, but we either do not have data for those date(s), or the project you asked for is not loaded yet.\"}");
+        assertTrue(pageViews.error);
+        assertEquals(0, pageViews.views);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsMalformedResponses() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews.parse("{\"items\":[{\"views\":");
+    }
+
+    @Test
+    public void readsTheViewsPerDay() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse("{\"items\":[" +
+                "{\"timestamp\":\"2026101500\",\"views\":120}," +
+                "{\"views\":80,\"timestamp\":\"2026101600\"}]}");
+        assertEquals(2, pageViews.dayCount);
+        assertEquals(LocalDate.of(2026, 10, 15).toEpochDay(), pageViews.days[0]);
+        assertEquals(120, pageViews.dailyViews[0]);
+        assertEquals(LocalDate.of(2026, 10, 16).toEpochDay(), pageViews.days[1]);
+        assertEquals(80, pageViews.dailyViews[1]);
+    }
+
+    @Test
+    public void recognisesAWindowWithoutViews() throws ParseException {
+        WikiCatalogExport.WikiPageStats.PageViews pageViews = WikiCatalogExport.WikiPageStats.PageViews.parse(
+                "{\"type\":\"https://mediawiki.org/wiki/HyperSwitch/errors/not_found\",\"title\":\"Not found.\"}");
+        assertTrue(pageViews.error);
+        assertTrue(pageViews.isNotFound());
+        assertEquals(0, pageViews.dayCount);
+    }
+}
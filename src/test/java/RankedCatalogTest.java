@@ -0,0 +1,95 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class RankedCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<WikiCatalogExport.WikiPage> pages = Arrays.asList(
+            page("en", "List_of_English_writers", "Charles_Dickens", "Charles Dickens", 900, LocalDate.of(2026, 10, 1)),
+            page("fr", "List_of_French-language_authors", "Victor_Hugo", "Victor Hugo", 700, null),
+            page("en", "List_of_English_writers", "Jane_Austen", "Jane Austen", 1200, null),
+            // the same title in another category shares its pool entry
+            page("fr", "List_of_French-language_authors", "Jane_Austen", "Jane Austen", 50, LocalDate.of(2026, 9, 30)),
+            // equal views are ranked by id
+            page("en", "List_of_English_writers", "Anne_Bront\u00eb", "Anne Bront\u00eb", 900, null));
+
+    @Test
+    public void ranksPagesPerCategory() throws IOException {
+        RankedCatalog catalog = writeAndOpen();
+        assertEquals(new HashSet<>(Arrays.asList("List_of_English_writers", "List_of_French-language_authors")), catalog.categories());
+        assertEquals(3, catalog.size("List_of_English_writers"));
+        assertEquals(2, catalog.size("List_of_French-language_authors"));
+        assertEquals(0, catalog.size("List_of_German-language_authors"));
+
+        assertEquals("Jane_Austen", catalog.id("List_of_English_writers", 0));
+        assertEquals("Anne_Bront\u00eb", catalog.id("List_of_English_writers", 1));
+        assertEquals("Charles_Dickens", catalog.id("List_of_English_writers", 2));
+        assertEquals("Victor_Hugo", catalog.id("List_of_French-language_authors", 0));
+        assertEquals("Jane_Austen", catalog.id("List_of_French-language_authors", 1));
+    }
+
+    @Test
+    public void readsPagesAsWritten() throws IOException {
+        RankedCatalog catalog = writeAndOpen();
+        assertEquals(pages.get(2), catalog.get("List_of_English_writers", 0));
+        assertEquals(pages.get(4), catalog.get("List_of_English_writers", 1));
+        assertEquals(pages.get(0), catalog.get("List_of_English_writers", 2));
+        assertEquals(pages.get(1), catalog.get("List_of_French-language_authors", 0));
+        assertEquals(pages.get(3), catalog.get("List_of_French-language_authors", 1));
+    }
+
+    @Test
+    public void compiledFileIsTheSameAsInMemory() throws IOException {
+        RankedCatalog compiled = writeAndOpen();
+        RankedCatalog inMemory = RankedCatalog.of(pages);
+        for (String category : inMemory.categories()) {
+            for (int rank = 0; rank < inMemory.size(category); rank++) {
+                assertEquals(inMemory.get(category, rank), compiled.get(category, rank));
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsRankBeyondTheCategory() throws IOException {
+        writeAndOpen().get("List_of_French-language_authors", 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Path csv = folder.getRoot().toPath().resolve("wiki.pages.csv");
+        Files.write(csv, (WikiCatalogExport.WikiPage.header() + '\n').getBytes(UTF_8));
+        RankedCatalog.open(csv);
+    }
+
+    private RankedCatalog writeAndOpen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("wiki.pages.bin");
+        RankedCatalog.write(path, pages);
+        return RankedCatalog.open(path);
+    }
+
+    private static WikiCatalogExport.WikiPage page(String language, String category, String id, String title, int views, LocalDate updated) {
+        return WikiCatalogExport.WikiPage.builder().
+                project(language + ".wikipedia.org").
+                category(category).
+                url("https://" + language + ".wikipedia.org/wiki/" + id).
+                id(id).
+                title(title).
+                views(views).
+                updated(updated).
+                build();
+    }
+}
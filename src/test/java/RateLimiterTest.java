@@ -0,0 +1,95 @@
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void spacesOutPermits() {
+        RateLimiter limiter = new RateLimiter(20);
+        long start = System.nanoTime();
+        // a burst of a quarter of a second, then a permit every 50 ms
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Handed out 11 permits in " + elapsedMillis + " ms", elapsedMillis >= 250);
+    }
+
+    @Test
+    public void raisesTheRateUpToTheMaximum() {
+        RateLimiter limiter = new RateLimiter("wikimedia.org", 10, 20);
+        limiter.onSuccess();
+        assertTrue(limiter.rate() > 10);
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(20, limiter.rate(), DELTA);
+    }
+
+    @Test
+    public void keepsAFixedRateWithoutAHigherMaximum() {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.onSuccess();
+        assertEquals(10, limiter.rate(), DELTA);
+    }
+
+    @Test
+    public void halvesTheRateOncePerSecondWhenThrottled() {
+        RateLimiter limiter = new RateLimiter("wikimedia.org", 10, 40);
+        limiter.onThrottled(0);
+        // the requests that were in flight with the previous rate
+        limiter.onThrottled(0);
+        assertEquals(5, limiter.rate(), DELTA);
+    }
+
+    @Test
+    public void pausesForTheRetryAfterTime() {
+        RateLimiter limiter = new RateLimiter("api.telegram.org", 30, 30);
+        limiter.onThrottled(300);
+        long start = System.nanoTime();
+        limiter.acquire();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Permit handed out after " + elapsedMillis + " ms", elapsedMillis >= 250);
+    }
+
+    @Test
+    public void rampsUpOnlyToAConfiguredMaximum() {
+        RateLimiter fixed = RateLimiter.forHost("fixed.example.org");
+        System.setProperty("RATE_LIMIT_MAX_ramping.example.org", "20");
+        try {
+            RateLimiter ramping = RateLimiter.forHost("ramping.example.org");
+            for (int i = 0; i < 1000; i++) {
+                fixed.onSuccess();
+                ramping.onSuccess();
+            }
+            assertEquals(10, fixed.rate(), DELTA);
+            assertEquals(20, ramping.rate(), DELTA);
+        } finally {
+            System.clearProperty("RATE_LIMIT_MAX_ramping.example.org");
+        }
+    }
+
+    @Test
+    public void neverExceedsTheLimitOfTelegram() {
+        System.setProperty("RATE_LIMIT_MAX_api.telegram.org", "120");
+        try {
+            RateLimiter limiter = RateLimiter.forHost("api.telegram.org");
+            for (int i = 0; i < 1000; i++) {
+                limiter.onSuccess();
+            }
+            assertEquals(30, limiter.rate(), DELTA);
+        } finally {
+            System.clearProperty("RATE_LIMIT_MAX_api.telegram.org");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMaximumBelowTheRate() {
+        new RateLimiter("wikimedia.org", 10, 5);
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionEngineTest {
+    private static final String EN = "List_of_English_writers";
+    private static final String FR = "List_of_French-language_authors";
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 17);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SentHistory history;
+    private SelectionEngine engine;
+
+    @Before
+    public void openHistory() throws IOException {
+        history = SentHistory.open(folder.getRoot().toPath().resolve("sent.history"), null);
+        RankedCatalog catalog = RankedCatalog.of(Arrays.asList(
+                page("en", EN, "Jane_Austen", 1200),
+                page("en", EN, "Charles_Dickens", 900),
+                page("fr", FR, "Victor_Hugo", 700)));
+        Map<String, String> categories = new HashMap<>();
+        categories.put("en", EN);
+        categories.put("fr", FR);
+        engine = new SelectionEngine(catalog, history, categories);
+    }
+
+    @After
+    public void closeHistory() throws IOException {
+        history.close();
+    }
+
+    @Test
+    public void rotatesTheLanguageOfTheDay() {
+        TelegramWikiBot.TelegramUser user = user(1, "en,fr");
+        assertEquals("fr", SelectionEngine.languageOfDay(user, DATE));
+        assertEquals("en", SelectionEngine.languageOfDay(user, DATE.plusDays(1)));
+    }
+
+    @Test
+    public void hasNoLanguageOfTheDayWithoutLanguages() {
+        TelegramWikiBot.TelegramUser user = user(1, "");
+        assertNull(SelectionEngine.languageOfDay(user, DATE));
+        assertTrue(engine.select(DATE, singletonList(user)).isEmpty());
+    }
+
+    @Test
+    public void selectsTheHighestRankedPageNotSentYet() throws IOException {
+        Map<Long, SelectionEngine.Selection> selections = engine.select(DATE, Arrays.asList(user(1, "en"), user(2, "en")));
+        assertEquals("Jane_Austen", selections.get(1L).getPage().getId());
+        // subscribers with the same sent pages share the selection
+        assertSame(selections.get(1L), selections.get(2L));
+
+        history.append("1", EN, "Jane_Austen", "");
+        selections = engine.select(DATE, Arrays.asList(user(1, "en"), user(2, "en")));
+        assertEquals("Charles_Dickens", selections.get(1L).getPage().getId());
+        assertEquals(1, selections.get(1L).getRank());
+        assertEquals("Jane_Austen", selections.get(2L).getPage().getId());
+    }
+
+    @Test
+    public void leavesOutSubscribersWithoutPagesToSend() throws IOException {
+        history.append("1", FR, "Victor_Hugo", "");
+        Map<Long, SelectionEngine.Selection> selections = engine.select(DATE, Arrays.asList(user(1, "fr"), user(2, "de"), user(3, "fr")));
+        assertFalse(selections.containsKey(1L));
+        assertFalse(selections.containsKey(2L));
+        assertEquals(FR, selections.get(3L).getCategory());
+        assertEquals(singleton(3L), selections.keySet());
+    }
+
+    private static TelegramWikiBot.TelegramUser user(long id, String languages) {
+        return TelegramWikiBot.TelegramUser.fromString(id + "|First|Last|" + languages + "|09:00|Europe/Amsterdam");
+    }
+
+    private static WikiCatalogExport.WikiPage page(String language, String category, String id, int views) {
+        return WikiCatalogExport.WikiPage.builder().
+                project(language + ".wikipedia.org").
+                category(category).
+                url("https://" + language + ".wikipedia.org/wiki/" + id).
+                id(id).
+                title(id.replace('_', ' ')).
+                views(views).
+                build();
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SentHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopensFromTheIndex() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("sent.history");
+        try (SentHistory history = SentHistory.open(log, null)) {
+            history.append(Arrays.asList("1", "2"), "en", "The_Hobbit", "https://en.wikipedia.org/wiki/The_Hobbit");
+            history.append("3", "fr", "Candide", "https://fr.wikipedia.org/wiki/Candide");
+        }
+        try (SentHistory history = SentHistory.open(log, null)) {
+            assertSent(history);
+        }
+    }
+
+    @Test
+    public void rebuildsMissingIndexFromTheLog() throws IOException {
+        Path log = writeHistory();
+        Files.delete(index(log));
+        try (SentHistory history = SentHistory.open(log, null)) {
+            assertSent(history);
+        }
+        // the rebuilt index is used by the next open
+        try (SentHistory history = SentHistory.open(log, null)) {
+            assertSent(history);
+        }
+    }
+
+    @Test
+    public void rebuildsIndexOfAnotherFormatFromTheLog() throws IOException {
+        Path log = writeHistory();
+        try (FileChannel index = FileChannel.open(index(log), WRITE)) {
+            index.write(ByteBuffer.allocate(4).putInt(0, 0x53484931), 0);
+        }
+        try (SentHistory history = SentHistory.open(log, null)) {
+            assertSent(history);
+        }
+    }
+
+    @Test
+    public void rebuildsIndexBehindTheLog() throws IOException {
+        Path log = writeHistory();
+        // e.g., the process stopped between the writes to the log and to the index
+        Files.write(log, "2016-09-11T10:00|4|de|Faust|https://de.wikipedia.org/wiki/Faust\n".getBytes(UTF_8), APPEND);
+        try (SentHistory history = SentHistory.open(log, null)) {
+            assertSent(history);
+            assertTrue(history.isSent("4", "de", "Faust"));
+            assertEquals(4, history.size());
+        }
+    }
+
+    @Test
+    public void importsLegacyMessagesForAllRecipients() throws IOException {
+        Path legacy = folder.getRoot().toPath().resolve("bot.msg");
+        Files.write(legacy, "2016-09-11T10:00|Candide|https://en.wikipedia.org/wiki/Candide\n".getBytes(UTF_8));
+        try (SentHistory history = SentHistory.open(folder.getRoot().toPath().resolve("sent.history"), legacy)) {
+            assertTrue(history.isSent("1", "en", "Candide"));
+            assertTrue(history.isSent("2", "fr", "Candide"));
+            assertEquals(0, history.signature("1"));
+        }
+    }
+
+    @Test
+    public void recipientsWithTheSamePagesHaveTheSameSignature() throws IOException {
+        try (SentHistory history = SentHistory.open(folder.getRoot().toPath().resolve("sent.history"), null)) {
+            history.append(Arrays.asList("1", "2"), "en", "The_Hobbit", "");
+            history.append("3", "en", "Candide", "");
+            assertEquals(history.signature("1"), history.signature("2"));
+            assertFalse(history.signature("1") == history.signature("3"));
+        }
+    }
+
+    private Path writeHistory() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("sent.history");
+        try (SentHistory history = SentHistory.open(log, null)) {
+            history.append(Arrays.asList("1", "2"), "en", "The_Hobbit", "https://en.wikipedia.org/wiki/The_Hobbit");
+            history.append("3", "fr", "Candide", "https://fr.wikipedia.org/wiki/Candide");
+        }
+        return log;
+    }
+
+    private static void assertSent(SentHistory history) {
+        assertTrue(history.isSent("1", "en", "The_Hobbit"));
+        assertTrue(history.isSent("2", "en", "The_Hobbit"));
+        assertTrue(history.isSent("3", "fr", "Candide"));
+        assertFalse(history.isSent("3", "en", "The_Hobbit"));
+        assertFalse(history.isSent("1", "fr", "Candide"));
+    }
+
+    private static Path index(Path log) {
+        return Paths.get(log + ".idx");
+    }
+}
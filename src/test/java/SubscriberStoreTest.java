@@ -0,0 +1,167 @@
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriberStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetCompaction() {
+        System.clearProperty("SUBSCRIBERS_COMPACT_AFTER");
+    }
+
+    @Test
+    public void recoversFromTheLog() throws IOException {
+        Path path = path();
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertTrue(store.isCreated());
+            store.subscribe(user(1, "en,fr"));
+            store.subscribe(user(2, "de"));
+            store.subscribe(user(1, "ru"));
+            assertTrue(store.unsubscribe(2));
+            assertFalse(store.unsubscribe(3));
+        }
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertFalse(store.isCreated());
+            assertEquals(1, store.size());
+            assertEquals(user(1, "ru"), store.get(1));
+            assertNull(store.get(2));
+            assertEquals(singleton(1L), store.subscribersOf("ru"));
+            assertTrue(store.subscribersOf("en").isEmpty());
+            assertTrue(store.subscribersOf("de").isEmpty());
+        }
+    }
+
+    @Test
+    public void recoversFromATornLastRecord() throws IOException {
+        Path path = path();
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            store.subscribe(user(1, "en"));
+        }
+        // the process stopped while it appended the record
+        String torn = "S|" + user(2, "de");
+        Files.write(wal(path), torn.substring(0, torn.length() / 2).getBytes(UTF_8), APPEND);
+
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertEquals(1, store.size());
+            assertEquals(user(1, "en"), store.get(1));
+            store.subscribe(user(3, "fr"));
+        }
+        // the records after the torn one are not lost
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertEquals(2, store.size());
+            assertEquals(user(1, "en"), store.get(1));
+            assertEquals(user(3, "fr"), store.get(3));
+        }
+    }
+
+    @Test
+    public void compactsIntoTheSnapshot() throws IOException {
+        System.setProperty("SUBSCRIBERS_COMPACT_AFTER", "3");
+        Path path = path();
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            store.subscribe(user(1, "en"));
+            store.subscribe(user(2, "de"));
+            store.subscribe(user(3, "fr"));
+            assertEquals(0, Files.size(wal(path)));
+            assertEquals(3, Files.readAllLines(snapshot(path), UTF_8).size());
+            store.unsubscribe(2);
+        }
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertEquals(2, store.size());
+            assertNull(store.get(2));
+            store.compact();
+            assertEquals(0, Files.size(wal(path)));
+        }
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertEquals(2, store.size());
+            assertEquals(user(1, "en"), store.get(1));
+            assertEquals(user(3, "fr"), store.get(3));
+        }
+    }
+
+    @Test
+    public void refreshesChangesOfAnotherStore() throws IOException {
+        Path path = path();
+        try (SubscriberStore bot = SubscriberStore.open(path);
+             SubscriberStore daemon = SubscriberStore.open(path)) {
+            assertFalse(daemon.refresh());
+            bot.subscribe(user(1, "en"));
+            bot.subscribe(user(2, "de"));
+            assertTrue(daemon.refresh());
+            assertEquals(2, daemon.size());
+            assertFalse(daemon.refresh());
+
+            bot.unsubscribe(1);
+            assertTrue(daemon.refresh());
+            assertNull(daemon.get(1));
+            assertEquals(singleton(2L), daemon.subscribersOf("de"));
+        }
+    }
+
+    @Test
+    public void refreshesAcrossACompactionOfAnotherStore() throws IOException {
+        Path path = path();
+        try (SubscriberStore bot = SubscriberStore.open(path);
+             SubscriberStore daemon = SubscriberStore.open(path)) {
+            bot.subscribe(user(1, "en"));
+            assertTrue(daemon.refresh());
+            bot.subscribe(user(2, "de"));
+            bot.compact();
+            bot.subscribe(user(3, "fr"));
+
+            assertTrue(daemon.refresh());
+            assertEquals(3, daemon.size());
+            assertEquals(user(2, "de"), daemon.get(2));
+            assertEquals(user(3, "fr"), daemon.get(3));
+        }
+    }
+
+    @Test
+    public void keepsTheChangesOfAnotherStoreOnCompaction() throws IOException {
+        Path path = path();
+        try (SubscriberStore bot = SubscriberStore.open(path);
+             SubscriberStore daemon = SubscriberStore.open(path)) {
+            bot.subscribe(user(1, "en"));
+            // the daemon compacts without a refresh, the subscriber of the bot is not dropped
+            daemon.subscribe(user(2, "de"));
+            daemon.compact();
+            bot.subscribe(user(3, "fr"));
+        }
+        try (SubscriberStore store = SubscriberStore.open(path)) {
+            assertEquals(3, store.size());
+        }
+    }
+
+    private Path path() {
+        return folder.getRoot().toPath().resolve("subscribers");
+    }
+
+    private static Path wal(Path path) {
+        return Paths.get(path + ".wal");
+    }
+
+    private static Path snapshot(Path path) {
+        return Paths.get(path + ".snapshot");
+    }
+
+    private static TelegramWikiBot.TelegramUser user(long id, String languages) {
+        return TelegramWikiBot.TelegramUser.fromString(id + "|First|Last|" + languages + "|09:00|Europe/Amsterdam");
+    }
+}
@@ -0,0 +1,148 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TelegramBroadcasterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final Map<Long, AtomicInteger> requests = new ConcurrentHashMap<>();
+    /** Response status per chat, 200 if there is none */
+    private final Map<Long, Integer> statuses = new ConcurrentHashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String form = new String(readAll(exchange.getRequestBody()), UTF_8);
+            long chatId = Long.parseLong(URLDecoder.decode(form.replaceAll(".*chat_id=([^&]*).*", "$1"), "UTF-8"));
+            requests.computeIfAbsent(chatId, id -> new AtomicInteger()).incrementAndGet();
+            int status = statuses.getOrDefault(chatId, 200);
+            byte[] body = ("{\"ok\":" + (status == 200) + "}").getBytes(UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        System.setProperty("BROADCAST_MAX_ATTEMPTS", "2");
+    }
+
+    @After
+    public void stopServer() {
+        System.clearProperty("BROADCAST_MAX_ATTEMPTS");
+        server.stop(0);
+    }
+
+    @Test
+    public void reportsTheOutcomeOfEveryRecipient() throws IOException {
+        statuses.put(2L, 403);
+        statuses.put(3L, 500);
+        Path deliveryLog = folder.getRoot().toPath().resolve("deliveries.log");
+        try (TelegramBroadcaster broadcaster = new TelegramBroadcaster(apiUrl(), deliveryLog)) {
+            TelegramBroadcaster.Report report = broadcaster.broadcast("2026-10-17/en", messages(1, 2, 3));
+            assertEquals(1, report.delivered);
+            assertEquals(2, report.failed);
+            assertEquals(0, report.skipped);
+        }
+        assertEquals(1, requests.get(1L).get());
+        // a rejected message is not retried, a failed one is
+        assertEquals(1, requests.get(2L).get());
+        assertEquals(2, requests.get(3L).get());
+        assertEquals(3, Files.readAllLines(deliveryLog).size());
+    }
+
+    @Test
+    public void skipsRecipientsWithAnOutcomeWhenRunAgain() throws IOException {
+        statuses.put(2L, 403);
+        statuses.put(3L, 500);
+        Path deliveryLog = folder.getRoot().toPath().resolve("deliveries.log");
+        try (TelegramBroadcaster broadcaster = new TelegramBroadcaster(apiUrl(), deliveryLog)) {
+            broadcaster.broadcast("2026-10-17/en", messages(1, 2, 3));
+        }
+        statuses.remove(3L);
+        try (TelegramBroadcaster broadcaster = new TelegramBroadcaster(apiUrl(), deliveryLog)) {
+            TelegramBroadcaster.Report report = broadcaster.broadcast("2026-10-17/en", messages(1, 2, 3));
+            assertEquals(1, report.delivered);
+            assertEquals(0, report.failed);
+            assertEquals(2, report.skipped);
+            // another broadcast goes to everyone
+            report = broadcaster.broadcast("2026-10-18/en", messages(1, 2, 3));
+            assertEquals(2, report.delivered);
+            assertEquals(1, report.failed);
+            assertEquals(0, report.skipped);
+        }
+        assertEquals(2, requests.get(1L).get());
+        assertEquals(2, requests.get(2L).get());
+        assertEquals(4, requests.get(3L).get());
+    }
+
+    @Test
+    public void reportsSkippedRecipientsOfTheSameMessage() throws IOException {
+        statuses.put(2L, 403);
+        Path deliveryLog = folder.getRoot().toPath().resolve("deliveries.log");
+        // an outcome of an older log, without the hash of the message
+        Files.write(deliveryLog, "2026-10-17/en|4|DELIVERED|2026-10-17T09:00\n".getBytes(UTF_8));
+        try (TelegramBroadcaster broadcaster = new TelegramBroadcaster(apiUrl(), deliveryLog)) {
+            broadcaster.broadcast("2026-10-17/en", messages(1, 2));
+        }
+        try (TelegramBroadcaster broadcaster = new TelegramBroadcaster(apiUrl(), deliveryLog)) {
+            Map<Long, String> messages = messages(1, 2, 4);
+            TelegramBroadcaster.Report report = broadcaster.broadcast("2026-10-17/en", messages);
+            assertEquals(3, report.skipped);
+            assertEquals(TelegramBroadcaster.Status.DELIVERED, report.statuses.get(1L));
+            assertEquals(TelegramBroadcaster.Status.REJECTED, report.statuses.get(2L));
+            assertFalse(report.statuses.containsKey(4L));
+
+            // another message, e.g., the next page after the first one was recorded
+            messages.put(1L, "Another page");
+            report = broadcaster.broadcast("2026-10-17/en", messages);
+            assertFalse(report.statuses.containsKey(1L));
+            assertEquals(TelegramBroadcaster.Status.REJECTED, report.statuses.get(2L));
+        }
+        assertEquals(1, requests.get(1L).get());
+    }
+
+    private String apiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/bot123:secret";
+    }
+
+    private static Map<Long, String> messages(long... chatIds) {
+        Map<Long, String> messages = new HashMap<>();
+        for (long chatId : chatIds) {
+            messages.put(chatId, "Page of the day for " + chatId);
+        }
+        return messages;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
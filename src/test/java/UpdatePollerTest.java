@@ -0,0 +1,137 @@
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UpdatePollerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final Queue<String> responses = new ConcurrentLinkedQueue<>();
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            queries.add(exchange.getRequestURI().getQuery());
+            String response = responses.poll();
+            byte[] body = (response == null ? "{\"ok\":true,\"result\":[]}" : response).getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void findsTheChatOfAnUpdate() {
+        assertEquals(42, UpdatePoller.chatId(parse(update(1, 42, "/start"))));
+        assertEquals(7, UpdatePoller.chatId(parse("{\"update_id\":2,\"callback_query\":{\"from\":{\"id\":7}}}")));
+        assertEquals(0, UpdatePoller.chatId(parse("{\"update_id\":3,\"poll\":{}}")));
+    }
+
+    @Test
+    public void handlesTheUpdatesOfAChatInOrder() throws Exception {
+        responses.add(updates(update(10, 1, "a"), update(11, 2, "b"), update(12, 1, "c"), update(13, 1, "d")));
+        List<String> chat1 = Collections.synchronizedList(new ArrayList<>());
+        Path offsetPath = folder.getRoot().toPath().resolve("bot.offset");
+        try (UpdatePoller poller = new UpdatePoller(apiUrl(), offsetPath, update -> {
+            if (UpdatePoller.chatId(update) == 1)
+                chat1.add(text(update));
+        }, 4, 10)) {
+            poller.pollOnce();
+        }
+        assertEquals(Arrays.asList("a", "c", "d"), chat1);
+        assertEquals("14", new String(Files.readAllBytes(offsetPath), UTF_8));
+    }
+
+    @Test
+    public void continuesFromThePersistedOffset() throws Exception {
+        Path offsetPath = folder.getRoot().toPath().resolve("bot.offset");
+        Files.write(offsetPath, "21".getBytes(UTF_8));
+        try (UpdatePoller poller = new UpdatePoller(apiUrl(), offsetPath, update -> { }, 1, 1)) {
+            poller.pollOnce();
+        }
+        assertTrue(queries.get(0), queries.get(0).endsWith("&offset=21"));
+    }
+
+    @Test
+    public void waitsForTheHandlersWhenTooManyUpdatesAreInFlight() throws Exception {
+        responses.add(updates(update(1, 1, "a"), update(2, 2, "b"), update(3, 3, "c")));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+        try (UpdatePoller poller = new UpdatePoller(apiUrl(), folder.getRoot().toPath().resolve("bot.offset"), update -> {
+            release.await();
+            handled.incrementAndGet();
+        }, 3, 2)) {
+            Thread polling = new Thread(() -> {
+                try {
+                    poller.pollOnce();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            polling.start();
+            polling.join(500);
+            // the third update waits for a free slot
+            assertTrue(polling.isAlive());
+            release.countDown();
+            polling.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(polling.isAlive());
+        }
+        assertEquals(3, handled.get());
+    }
+
+    private String apiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/bot123:secret";
+    }
+
+    private static String updates(String... updates) {
+        return "{\"ok\":true,\"result\":[" + String.join(",", updates) + "]}";
+    }
+
+    private static String update(long updateId, long chatId, String text) {
+        return "{\"update_id\":" + updateId + ",\"message\":{\"chat\":{\"id\":" + chatId + "},\"text\":\"" + text + "\"}}";
+    }
+
+    private static JSONObject parse(String json) {
+        return (JSONObject) JSONValue.parse(json);
+    }
+
+    private static String text(JSONObject update) {
+        return (String) ((JSONObject) update.get("message")).get("text");
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WikiCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsPagesWithAndWithoutTheUpdateDate() {
+        WikiCatalogExport.WikiPage page = WikiCatalogExport.WikiPage.fromString("en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|Faust|42|2026-10-01");
+        assertEquals(LocalDate.of(2026, 10, 1), page.getUpdated());
+        assertEquals("en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|Faust|42|2026-10-01", page.toString());
+
+        WikiCatalogExport.WikiPage legacy = WikiCatalogExport.WikiPage.fromString("en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|Faust|42");
+        assertNull(legacy.getUpdated());
+        assertEquals("en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|Faust|42", legacy.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLinesWithMissingColumns() {
+        WikiCatalogExport.WikiPage.fromString("en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|42");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTitlesWithTheSeparator() {
+        WikiCatalogExport.WikiPage.builder().project("en.wikipedia.org").category("List_of_poets").url("/wiki/Faust").
+                id("Faust").title("Faust|Part One").views(42).build().toString();
+    }
+
+    @Test
+    public void keepsTheCategoriesThatAreNotUpdated() throws IOException {
+        Path export = folder.getRoot().toPath().resolve("wiki.pages.csv");
+        List<String> lines = Arrays.asList(
+                "en.wikipedia.org|List_of_poets|/wiki/Faust|Faust|Faust|42|2026-10-01",
+                "de.wikipedia.org|Liste_der_Dichter|/wiki/Werther|Werther|Werther|7",
+                "en.wikipedia.org|List_of_poets|/wiki/Hamlet|Hamlet|Hamlet|12|2026-09-01");
+        Files.write(export, lines);
+
+        WikiCatalogExport.WikiCatalog catalog = new WikiCatalogExport.WikiCatalog();
+        catalog.loadPreviousExport(export.toString(), 30);
+        catalog.exportToFile(export.toString());
+
+        assertEquals(Arrays.asList(lines.get(0), lines.get(2), lines.get(1)), Files.readAllLines(export));
+    }
+
+    @Test
+    public void exportsNothingWithoutAPreviousExport() throws IOException {
+        Path export = folder.getRoot().toPath().resolve("wiki.pages.csv");
+        WikiCatalogExport.WikiCatalog catalog = new WikiCatalogExport.WikiCatalog();
+        catalog.loadPreviousExport(export.toString(), 30);
+        catalog.exportToFile(export.toString());
+
+        assertEquals(0, Files.readAllLines(export).size());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WikidataCsvSourceTest {
+
+    private final WikidataCsvSource source = new WikidataCsvSource("en.wikipedia.org", "book", "article", "title", false);
+    private final WikidataCsvSource fallbackSource = new WikidataCsvSource("en.wikipedia.org", "book", "article", "title", true);
+
+    @Test
+    public void prefersTheArticleOfAnItem() throws IOException {
+        List<String> titles = titles(fallbackSource, "book,title,article\n" +
+                "http://www.wikidata.org/entity/Q74287,Der kleine Hobbit,\n" +
+                "http://www.wikidata.org/entity/Q74287,The Hobbit,https://en.wikipedia.org/wiki/The_Hobbit\n" +
+                "http://www.wikidata.org/entity/Q74287,Bilbo,\n" +
+                "http://www.wikidata.org/entity/Q43361,Candide,\n");
+        assertEquals(Arrays.asList("The Hobbit", "Candide"), titles);
+    }
+
+    @Test
+    public void skipsRowsWithoutArticleByDefault() throws IOException {
+        List<String> titles = titles("book,title,article\n" +
+                "http://www.wikidata.org/entity/Q74287,Der kleine Hobbit,\n" +
+                "http://www.wikidata.org/entity/Q74287,The Hobbit,https://en.wikipedia.org/wiki/The_Hobbit\n" +
+                "http://www.wikidata.org/entity/Q43361,Candide,\n");
+        assertEquals(Arrays.asList("The Hobbit"), titles);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsResultWithoutArticleColumnByDefault() throws IOException {
+        titles("book,title\nQ1,One\n");
+    }
+
+    @Test
+    public void passesEveryItemOnce() throws IOException {
+        List<String> titles = titles(fallbackSource, "book,title,article\n" +
+                "Q1,One,\n" +
+                "Q2,Two,\n" +
+                "Q1,One again,https://en.wikipedia.org/wiki/One\n");
+        assertEquals(Arrays.asList("One", "Two"), titles);
+    }
+
+    @Test
+    public void skipsRowsWithoutItemOrTitle() throws IOException {
+        List<String> titles = titles(fallbackSource, "article,book,title\n" +
+                ",,No item\n" +
+                ",Q1,\n" +
+                "https://fr.wikipedia.org/wiki/Candide,Q2,\n" +
+                "https://en.wikipedia.org/wiki/Faust,Q3,\n");
+        assertEquals(Arrays.asList("Faust"), titles);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsResultWithoutItemColumn() throws IOException {
+        titles("item,title\nQ1,One\n");
+    }
+
+    @Test
+    public void decodesArticleTitles() {
+        assertEquals("Crime and Punishment", source.articleTitle("https://en.wikipedia.org/wiki/Crime_and_Punishment"));
+        assertEquals("Tao Te Ching", source.articleTitle("https://en.wikipedia.org/wiki/Tao_Te_Ching"));
+        assertEquals("C++ Primer", source.articleTitle("https://en.wikipedia.org/wiki/C++_Primer"));
+        assertEquals("Les Mis\u00e9rables", source.articleTitle("https://en.wikipedia.org/wiki/Les_Mis%C3%A9rables"));
+        assertNull(source.articleTitle("https://fr.wikipedia.org/wiki/Candide"));
+        assertNull(source.articleTitle(""));
+    }
+
+    @Test
+    public void parsesItemIds() {
+        assertEquals(571, WikidataCsvSource.itemId("http://www.wikidata.org/entity/Q571"));
+        assertEquals(571, WikidataCsvSource.itemId("Q571"));
+        assertEquals(-1, WikidataCsvSource.itemId("http://www.wikidata.org/entity/P31"));
+        assertEquals(-1, WikidataCsvSource.itemId("Qx"));
+        assertEquals(-1, WikidataCsvSource.itemId(""));
+        assertEquals(-1, WikidataCsvSource.itemId(null));
+    }
+
+    private List<String> titles(String csv) throws IOException {
+        return titles(source, csv);
+    }
+
+    private static List<String> titles(WikidataCsvSource source, String csv) throws IOException {
+        List<String> titles = new ArrayList<>();
+        source.forEachTitle(new StringReader(csv), titles::add);
+        return titles;
+    }
+}